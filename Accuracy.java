@@ -0,0 +1,230 @@
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Locale;
+
+/** Accuracy versus speed harness.
+ *
+ * Each simulation configuration is run over the ranges of the reference
+ * tables, and its errors are reported next to its time and integration
+ * steps.  Configurations which no other beats on misses, maximum error and
+ * time together are marked as the Pareto front.
+ *
+ * Usage: Accuracy ["settings"] ...
+ *
+ * Settings are given as by Settings.parse, such as "rk4 step=0.005". */
+public class Accuracy {
+
+	/** Configurations to run when none are given */
+	static private final String[] DEFAULT_CONFIGS = {
+		"verlet",
+		"rk4 step=0.005",
+		"rk4",
+		"dormand-prince tolerance=1e-6",
+		"dormand-prince",
+		"dormand-prince continuation",
+	};
+
+	/** Take every Nth range of the first reference to warm up */
+	static private final int WARMUP_EVERY = 10;
+
+	/** Number of velocity columns (optimal, high, low) */
+	static private final int COLUMNS = 3;
+
+	/** Reference velocities for one launch angle */
+	static private class Reference {
+
+		/** Name of reference */
+		private final String name;
+
+		/** Launch angle (degrees) */
+		private final double angle;
+
+		/** Rows of range (m), optimal, high and low velocity (m/s) */
+		private final double[][] rows;
+
+		/** Create a new reference */
+		private Reference(String n, double a, double[][] r) {
+			name = n;
+			angle = a;
+			rows = r;
+		}
+
+		/** Get ranges (cm), taking every nth row */
+		private int[] ranges(int n) {
+			int[] r = new int[(rows.length + n - 1) / n];
+			for (int i = 0; i < r.length; i++)
+				r[i] = (int) Math.round(rows[i * n][0] * 100.0);
+			return r;
+		}
+	}
+
+	/** Read a reference table with a header and rows of range, optimal,
+	 * high and low */
+	static private Reference readReference(String file, double angle)
+		throws IOException
+	{
+		ArrayList<double[]> rows = new ArrayList<>();
+		try (BufferedReader br = new BufferedReader(new FileReader(file))) {
+			String line = br.readLine(); // header
+			while ((line = br.readLine()) != null) {
+				String[] v = line.split(",");
+				double[] row = new double[COLUMNS + 1];
+				for (int c = 0; c <= COLUMNS; c++)
+					row[c] = Double.parseDouble(v[c]);
+				rows.add(row);
+			}
+		}
+		return new Reference(file, angle, rows.toArray(new double[0][]));
+	}
+
+	/** Load all references.  Data45.TABLE is a copy of data45.csv, so it
+	 * is only run separately if the two differ. */
+	static private Reference[] loadReferences() throws IOException {
+		Reference d45 = readReference("data45.csv", 45.0);
+		Reference d40 = readReference("data40.csv", 40.0);
+		if (Arrays.deepEquals(d45.rows, Data45.TABLE))
+			return new Reference[] { d45, d40 };
+		System.err.println("Data45.TABLE differs from data45.csv");
+		return new Reference[] {
+			d45, d40, new Reference("Data45.TABLE", 45.0, Data45.TABLE)
+		};
+	}
+
+	/** Errors and cost of one configuration over all references */
+	static private class Result {
+
+		/** Simulation settings */
+		private final Settings settings;
+
+		/** Number of ranges compared */
+		private int ranges = 0;
+
+		/** Number of ranges with a reference shot, but none found */
+		private int misses = 0;
+
+		/** Maximum error for each column (m/s) */
+		private final double[] max = new double[COLUMNS];
+
+		/** Sum of squared errors for each column (m^2/s^2) */
+		private final double[] sum_sq = new double[COLUMNS];
+
+		/** Wall clock time (s) */
+		private double seconds = 0.0;
+
+		/** Integration steps */
+		private long steps = 0;
+
+		/** Is the result on the Pareto front? */
+		private boolean pareto = false;
+
+		/** Create a new result */
+		private Result(Settings s) {
+			settings = s;
+		}
+
+		/** Add speeds found for one reference row */
+		private void add(Speeds s, double[] row) {
+			if (!s.isValid()) {
+				misses++;
+				return;
+			}
+			ranges++;
+			double[] v = { s.optimal, s.high, s.low };
+			for (int c = 0; c < COLUMNS; c++) {
+				double e = Math.abs(v[c] - row[c + 1]);
+				max[c] = Math.max(max[c], e);
+				sum_sq[c] += e * e;
+			}
+		}
+
+		/** Get RMS error for a column (m/s) */
+		private double rms(int c) {
+			return (ranges > 0) ? Math.sqrt(sum_sq[c] / ranges) : 0.0;
+		}
+
+		/** Get maximum error of all columns (m/s) */
+		private double worst() {
+			return Math.max(max[0], Math.max(max[1], max[2]));
+		}
+
+		/** Check if another result is at least as good in every way, and
+		 * better in at least one */
+		private boolean isDominatedBy(Result o) {
+			return o.misses <= misses && o.worst() <= worst() &&
+			       o.seconds <= seconds &&
+			      (o.misses < misses || o.worst() < worst() ||
+			       o.seconds < seconds);
+		}
+
+		/** Format as one row of the report */
+		private String format() {
+			StringBuilder sb = new StringBuilder();
+			sb.append('"').append(settings).append('"');
+			sb.append(',').append(ranges);
+			sb.append(',').append(misses);
+			for (int c = 0; c < COLUMNS; c++) {
+				sb.append(String.format(Locale.ROOT, ",%.5f,%.5f",
+					max[c], rms(c)));
+			}
+			sb.append(String.format(Locale.ROOT, ",%.3f", seconds));
+			sb.append(',').append(steps);
+			sb.append(',').append(pareto ? "*" : "");
+			return sb.toString();
+		}
+	}
+
+	/** Header for report */
+	static private final String HEADER = "settings,ranges,misses," +
+		"optimal_max,optimal_rms,high_max,high_rms,low_max,low_rms," +
+		"seconds,steps,pareto";
+
+	/** Run one configuration over all references */
+	static private Result run(Settings settings, Reference[] refs) {
+		Result res = new Result(settings);
+		// Warm up, so that the first configuration is not penalized
+		Simulator.findSpeedsForRanges(Environment.DEFAULT, refs[0].angle,
+			refs[0].ranges(WARMUP_EVERY), settings);
+		for (Reference ref : refs) {
+			long steps = Simulator.getSteps();
+			long start = System.nanoTime();
+			Speeds[] speeds = Simulator.findSpeedsForRanges(
+				Environment.DEFAULT, ref.angle, ref.ranges(1),
+				settings);
+			res.seconds += (System.nanoTime() - start) / 1e9;
+			res.steps += Simulator.getSteps() - steps;
+			for (int i = 0; i < speeds.length; i++)
+				res.add(speeds[i], ref.rows[i]);
+		}
+		return res;
+	}
+
+	/** Mark results on the Pareto front */
+	static private void markPareto(Result[] results) {
+		for (Result r : results) {
+			r.pareto = true;
+			for (Result o : results) {
+				if (r.isDominatedBy(o))
+					r.pareto = false;
+			}
+		}
+	}
+
+	/** Run configurations, and report results as CSV */
+	static public void main(String[] args) throws IOException {
+		String[] configs = (args.length > 0) ? args : DEFAULT_CONFIGS;
+		Reference[] refs = loadReferences();
+		Result[] results = new Result[configs.length];
+		for (int i = 0; i < configs.length; i++) {
+			Settings settings = Settings.parse(configs[i]);
+			System.err.println("Running " + settings);
+			results[i] = run(settings, refs);
+		}
+		markPareto(results);
+		System.out.println(HEADER);
+		for (Result r : results)
+			System.out.println(r.format());
+	}
+}
@@ -0,0 +1,296 @@
+/** Simulates many power cell launches at once, for their outcomes.
+ *
+ * State for all shots is held in primitive arrays (structure of arrays),
+ * one lane per shot, and every pass advances all lanes by one fixed RK4
+ * step.  The kernel is split into loops over lanes with no calls or
+ * branches, which the JIT compiler can turn into SIMD instructions; only
+ * the drag coefficient lookup, a table gather, is a scalar loop.  A
+ * finished lane is masked with a zero step, so it stays where it is.
+ *
+ * Lanes are only stepped before they near the outer port.  The step which
+ * would reach the first port zone is undone, and the shot is handed to a
+ * Simulator, which finishes it exactly as Simulator.simulateOutcome would,
+ * locating port crossings and collisions.  Hopeless shots are given up in
+ * their lanes, as in simulateOutcome.
+ *
+ * Only fixed step RK4 is supported, since lanes must share one step.
+ * Speeds are found with Math.sqrt rather than Math.hypot, which can differ
+ * in the last bit, so an outcome within a rounding error of a port edge
+ * may differ from one simulated alone. */
+public class BatchSimulator {
+
+	/** X position where lanes are handed over to the simulator (m) */
+	static private final double HANDOVER_X = Simulator.ZONE_BOUNDARIES[0];
+
+	/** Simulator for finishing shots */
+	private final Simulator sim;
+
+	/** Power cell launcher */
+	private final Launcher launcher;
+
+	/** Step size (s) */
+	private final double step;
+
+	/** Acceleration of gravity (m/s^2) */
+	private final double gravity;
+
+	/** Power cell for each lane, used for launch, drag and finishing */
+	private final PowerCell[] cells;
+
+	/** Shot index of each lane (-1 if finished) */
+	private final int[] shot;
+
+	/** Time from launch for each lane (s) */
+	private final double[] dur;
+
+	/** Step for each lane, 0 if masked (s) */
+	private final double[] h;
+
+	/** Magnus acceleration factor for each lane (1/s) */
+	private final double[] km;
+
+	/** Displacement from target for each lane (m) */
+	private final double[] x;
+
+	/** Elevation for each lane (m) */
+	private final double[] y;
+
+	/** X velocity for each lane, also the first stage (m/s) */
+	private final double[] vx;
+
+	/** Y velocity for each lane, also the first stage (m/s) */
+	private final double[] vy;
+
+	/** X velocity at stage 2 (m/s) */
+	private final double[] vx2;
+
+	/** X velocity at stage 3 (m/s) */
+	private final double[] vx3;
+
+	/** X velocity at stage 4 (m/s) */
+	private final double[] vx4;
+
+	/** Y velocity at stage 2 (m/s) */
+	private final double[] vy2;
+
+	/** Y velocity at stage 3 (m/s) */
+	private final double[] vy3;
+
+	/** Y velocity at stage 4 (m/s) */
+	private final double[] vy4;
+
+	/** X acceleration at stage 1 (m/s^2) */
+	private final double[] ax1;
+
+	/** X acceleration at stage 2 (m/s^2) */
+	private final double[] ax2;
+
+	/** X acceleration at stage 3 (m/s^2) */
+	private final double[] ax3;
+
+	/** X acceleration at stage 4 (m/s^2) */
+	private final double[] ax4;
+
+	/** Y acceleration at stage 1 (m/s^2) */
+	private final double[] ay1;
+
+	/** Y acceleration at stage 2 (m/s^2) */
+	private final double[] ay2;
+
+	/** Y acceleration at stage 3 (m/s^2) */
+	private final double[] ay3;
+
+	/** Y acceleration at stage 4 (m/s^2) */
+	private final double[] ay4;
+
+	/** Speed for each lane at the current stage (m/s) */
+	private final double[] speed;
+
+	/** Drag factor for each lane at the current stage (1/s) */
+	private final double[] kd;
+
+	/** Create a new batch simulator.
+	 * @param lanes Number of shots advanced together.
+	 * @throws IllegalArgumentException if settings are not RK4. */
+	public BatchSimulator(Environment env, double angle, double range,
+		Settings settings, int lanes)
+	{
+		if (settings.scheme != Settings.Scheme.RK4) {
+			throw new IllegalArgumentException("Batches need rk4, " +
+				"not " + settings);
+		}
+		if (lanes < 1)
+			throw new IllegalArgumentException("lanes: " + lanes);
+		sim = new Simulator(env, angle, range, settings);
+		launcher = new Launcher(env, angle, range);
+		step = settings.step;
+		gravity = env.gravity;
+		cells = new PowerCell[lanes];
+		for (int i = 0; i < lanes; i++)
+			cells[i] = new PowerCell(env, 0.0, 0.0, 0.0, 0.0);
+		shot = new int[lanes];
+		dur = new double[lanes];
+		h = new double[lanes];
+		km = new double[lanes];
+		x = new double[lanes];
+		y = new double[lanes];
+		vx = new double[lanes];
+		vy = new double[lanes];
+		vx2 = new double[lanes];
+		vx3 = new double[lanes];
+		vx4 = new double[lanes];
+		vy2 = new double[lanes];
+		vy3 = new double[lanes];
+		vy4 = new double[lanes];
+		ax1 = new double[lanes];
+		ax2 = new double[lanes];
+		ax3 = new double[lanes];
+		ax4 = new double[lanes];
+		ay1 = new double[lanes];
+		ay2 = new double[lanes];
+		ay3 = new double[lanes];
+		ay4 = new double[lanes];
+		speed = new double[lanes];
+		kd = new double[lanes];
+	}
+
+	/** Get number of lanes */
+	public int getLanes() {
+		return x.length;
+	}
+
+	/** Simulate shots with no allocation, as Simulator.simulateOutcome,
+	 * in batches of up to one shot per lane.  Shot i is launched with
+	 * velocity v + dv[i] and the launch angle offset by da[i].
+	 * @param v Launch velocity (m/s).
+	 * @param dv Launch velocity offset of each shot (m/s).
+	 * @param da Launch angle offset of each shot (radians).
+	 * @param outcomes Outcome code of each shot (output). */
+	public void simulateOutcomes(double v, double[] dv, double[] da,
+		int[] outcomes)
+	{
+		int lanes = getLanes();
+		for (int s = 0; s < dv.length; s += lanes) {
+			simulateBatch(v, dv, da, outcomes, s,
+				Math.min(lanes, dv.length - s));
+		}
+	}
+
+	/** Simulate one batch of n shots, starting at shot s */
+	private void simulateBatch(double v, double[] dv, double[] da,
+		int[] outcomes, int s, int n)
+	{
+		for (int i = 0; i < n; i++)
+			launch(i, s + i, v + dv[s + i], da[s + i]);
+		int active = n; // lanes past the last active lane are finished
+		while (active > 0) {
+			advance(active);
+			int last = -1;
+			for (int i = 0; i < active; i++) {
+				if (shot[i] >= 0) {
+					checkLane(i, outcomes);
+					if (shot[i] >= 0)
+						last = i;
+				}
+			}
+			active = last + 1;
+		}
+	}
+
+	/** Launch one lane */
+	private void launch(int i, int s, double v, double a) {
+		PowerCell cell = cells[i];
+		launcher.launch(cell, v, a);
+		shot[i] = s;
+		dur[i] = 0.0;
+		h[i] = Math.min(step, Simulator.FLIGHT_TIME);
+		km[i] = cell.getMagnusFactor();
+		x[i] = cell.x;
+		y[i] = cell.y;
+		vx[i] = cell.vx;
+		vy[i] = cell.vy;
+	}
+
+	/** Advance lanes by one RK4 step, in the same order of operations
+	 * as RungeKutta4.  Masked lanes have a zero step. */
+	private void advance(int n) {
+		double g = gravity;
+		dragFactors(vx, vy, n);
+		for (int i = 0; i < n; i++) {
+			ax1[i] = -kd[i] * vx[i] - km[i] * vy[i];
+			ay1[i] = -g - kd[i] * vy[i] + km[i] * vx[i];
+			vx2[i] = vx[i] + 0.5 * h[i] * ax1[i];
+			vy2[i] = vy[i] + 0.5 * h[i] * ay1[i];
+		}
+		dragFactors(vx2, vy2, n);
+		for (int i = 0; i < n; i++) {
+			ax2[i] = -kd[i] * vx2[i] - km[i] * vy2[i];
+			ay2[i] = -g - kd[i] * vy2[i] + km[i] * vx2[i];
+			vx3[i] = vx[i] + 0.5 * h[i] * ax2[i];
+			vy3[i] = vy[i] + 0.5 * h[i] * ay2[i];
+		}
+		dragFactors(vx3, vy3, n);
+		for (int i = 0; i < n; i++) {
+			ax3[i] = -kd[i] * vx3[i] - km[i] * vy3[i];
+			ay3[i] = -g - kd[i] * vy3[i] + km[i] * vx3[i];
+			vx4[i] = vx[i] + h[i] * ax3[i];
+			vy4[i] = vy[i] + h[i] * ay3[i];
+		}
+		dragFactors(vx4, vy4, n);
+		for (int i = 0; i < n; i++) {
+			ax4[i] = -kd[i] * vx4[i] - km[i] * vy4[i];
+			ay4[i] = -g - kd[i] * vy4[i] + km[i] * vx4[i];
+		}
+		for (int i = 0; i < n; i++) {
+			double f = h[i] / 6.0;
+			x[i] += f * (vx[i] + 2.0 * vx2[i] + 2.0 * vx3[i] +
+				vx4[i]);
+			y[i] += f * (vy[i] + 2.0 * vy2[i] + 2.0 * vy3[i] +
+				vy4[i]);
+			vx[i] += f * (ax1[i] + 2.0 * ax2[i] + 2.0 * ax3[i] +
+				ax4[i]);
+			vy[i] += f * (ay1[i] + 2.0 * ay2[i] + 2.0 * ay3[i] +
+				ay4[i]);
+		}
+	}
+
+	/** Calculate drag factors for stage velocities.  Speeds are a SIMD
+	 * loop, and the table lookup a scalar one. */
+	private void dragFactors(double[] sx, double[] sy, int n) {
+		for (int i = 0; i < n; i++)
+			speed[i] = Math.sqrt(sx[i] * sx[i] + sy[i] * sy[i]);
+		PowerCell cell = cells[0];
+		for (int i = 0; i < n; i++)
+			kd[i] = cell.dragFactor(speed[i]);
+	}
+
+	/** Check one lane after a step, finishing its shot if done */
+	private void checkLane(int i, int[] outcomes) {
+		PowerCell cell = cells[i];
+		if (x[i] >= HANDOVER_X) {
+			// Power cell is still at the start of the step
+			outcomes[shot[i]] = sim.finishOutcome(cell, dur[i]);
+			finish(i);
+			return;
+		}
+		dur[i] += h[i];
+		cell.x = x[i];
+		cell.y = y[i];
+		cell.vx = vx[i];
+		cell.vy = vy[i];
+		if (Simulator.isHopeless(cell)) {
+			outcomes[shot[i]] = Outcome.MISS;
+			finish(i);
+		} else if (dur[i] >= Simulator.FLIGHT_TIME) {
+			outcomes[shot[i]] = Outcome.classify(cell);
+			finish(i);
+		} else
+			h[i] = Math.min(step, Simulator.FLIGHT_TIME - dur[i]);
+	}
+
+	/** Mask a finished lane */
+	private void finish(int i) {
+		shot[i] = -1;
+		h[i] = 0.0;
+	}
+}
@@ -0,0 +1,278 @@
+/** Adaptive Dormand-Prince 5(4) integrator for power cell motion.
+ *
+ * Each step is taken with a 5th order Runge-Kutta method, and compared
+ * with an embedded 4th order solution to estimate the local error.  The
+ * step size grows through smooth ballistic flight, and shrinks when the
+ * error estimate exceeds the tolerance. */
+public class DormandPrince implements Integrator {
+
+	/** Number of stages */
+	static private final int STAGES = 7;
+
+	/** Runge-Kutta matrix */
+	static private final double[][] A = {
+		{ },
+		{ 1.0 / 5.0 },
+		{ 3.0 / 40.0, 9.0 / 40.0 },
+		{ 44.0 / 45.0, -56.0 / 15.0, 32.0 / 9.0 },
+		{ 19372.0 / 6561.0, -25360.0 / 2187.0, 64448.0 / 6561.0,
+		  -212.0 / 729.0 },
+		{ 9017.0 / 3168.0, -355.0 / 33.0, 46732.0 / 5247.0,
+		  49.0 / 176.0, -5103.0 / 18656.0 },
+		{ 35.0 / 384.0, 0.0, 500.0 / 1113.0, 125.0 / 192.0,
+		  -2187.0 / 6784.0, 11.0 / 84.0 },
+	};
+
+	/** Weights for 5th order solution (same as last row of A) */
+	static private final double[] B = A[STAGES - 1];
+
+	/** Weights for error estimate (5th order minus 4th order) */
+	static private final double[] E = {
+		71.0 / 57600.0, 0.0, -71.0 / 16695.0, 71.0 / 1920.0,
+		-17253.0 / 339200.0, 22.0 / 525.0, -1.0 / 40.0,
+	};
+
+	/** Safety factor for step size changes */
+	static private final double SAFETY = 0.9;
+
+	/** Minimum step size scale factor */
+	static private final double MIN_SCALE = 0.2;
+
+	/** Maximum step size scale factor */
+	static private final double MAX_SCALE = 5.0;
+
+	/** Minimum step size (s) */
+	static private final double MIN_STEP = 1e-7;
+
+	/** Initial step size (s) */
+	static private final double INITIAL_STEP = 1e-4;
+
+	/** Error tolerance (absolute and relative) */
+	public final double tolerance;
+
+	/** Maximum step size (s) */
+	public final double maxStep;
+
+	/** Proposed size of next step (s) */
+	private double step;
+
+	/** Number of accepted steps since reset */
+	private int accepted;
+
+	/** Number of rejected steps since reset */
+	private int rejected;
+
+	/** Stage X velocities (m/s) */
+	private final double[] kvx = new double[STAGES];
+
+	/** Stage Y velocities (m/s) */
+	private final double[] kvy = new double[STAGES];
+
+	/** Stage X accelerations (m/s^2) */
+	private final double[] kax = new double[STAGES];
+
+	/** Stage Y accelerations (m/s^2) */
+	private final double[] kay = new double[STAGES];
+
+	/** Stage Z velocities (m/s), in three dimensions */
+	private final double[] kvz = new double[STAGES];
+
+	/** Stage Z accelerations (m/s^2), in three dimensions */
+	private final double[] kaz = new double[STAGES];
+
+	/** Create a new Dormand-Prince integrator */
+	public DormandPrince(double tol, double max) {
+		tolerance = tol;
+		maxStep = max;
+		reset();
+	}
+
+	/** Reset step size for a new flight */
+	@Override
+	public void reset() {
+		step = Math.min(INITIAL_STEP, maxStep);
+		accepted = 0;
+		rejected = 0;
+	}
+
+	/** Get number of accepted steps since reset */
+	public int getAccepted() {
+		return accepted;
+	}
+
+	/** Get number of rejected steps since reset */
+	public int getRejected() {
+		return rejected;
+	}
+
+	/** Advance a power cell by one accepted step, no longer than max.
+	 * A step shortened to max does not change the proposed step size.
+	 * @return Time advanced (s). */
+	@Override
+	public double advance(PowerCell cell, double max) {
+		while (true) {
+			boolean limited = max < step;
+			double h = limited ? max : step;
+			if (control(evaluate(cell, h), h, limited)) {
+				accept(cell, h);
+				return h;
+			}
+		}
+	}
+
+	/** Advance a power cell in three dimensions by one accepted step,
+	 * as advance does in two dimensions.
+	 * @return Time advanced (s). */
+	@Override
+	public double advance(PowerCell3D cell, double max) {
+		while (true) {
+			boolean limited = max < step;
+			double h = limited ? max : step;
+			if (control(evaluate(cell, h), h, limited)) {
+				accept(cell, h);
+				return h;
+			}
+		}
+	}
+
+	/** Control the step size after evaluating a step.
+	 * @param err Scaled error norm of the step.
+	 * @param h Size of the step (s).
+	 * @param limited Was the step shortened to its maximum?
+	 * @return true if the step is accepted. */
+	private boolean control(double err, double h, boolean limited) {
+		double scale = (err > 0.0)
+		      ? SAFETY * Math.pow(err, -0.2)
+		      : MAX_SCALE;
+		if (err <= 1.0 || h <= MIN_STEP) {
+			scale = Math.min(scale, MAX_SCALE);
+			if (!limited)
+				step = Math.min(h * scale, maxStep);
+			accepted++;
+			return true;
+		}
+		step = Math.max(h * Math.max(scale, MIN_SCALE), MIN_STEP);
+		rejected++;
+		return false;
+	}
+
+	/** Evaluate all stages for a step.
+	 * @return Scaled error norm (accept if no more than 1). */
+	private double evaluate(PowerCell cell, double h) {
+		for (int i = 0; i < STAGES; i++) {
+			double vx = cell.vx;
+			double vy = cell.vy;
+			for (int j = 0; j < i; j++) {
+				vx += h * A[i][j] * kax[j];
+				vy += h * A[i][j] * kay[j];
+			}
+			double kd = cell.dragFactor(Math.hypot(vx, vy));
+			kvx[i] = vx;
+			kvy[i] = vy;
+			kax[i] = cell.accelerationX(vx, vy, kd);
+			kay[i] = cell.accelerationY(vx, vy, kd);
+		}
+		double ex = 0.0;
+		double ey = 0.0;
+		double evx = 0.0;
+		double evy = 0.0;
+		for (int i = 0; i < STAGES; i++) {
+			ex += E[i] * kvx[i];
+			ey += E[i] * kvy[i];
+			evx += E[i] * kax[i];
+			evy += E[i] * kay[i];
+		}
+		return Math.max(
+			Math.max(scaled(h * ex, cell.x), scaled(h * ey, cell.y)),
+			Math.max(scaled(h * evx, cell.vx),
+			         scaled(h * evy, cell.vy)));
+	}
+
+	/** Evaluate all stages for a step in three dimensions.
+	 * @return Scaled error norm (accept if no more than 1). */
+	private double evaluate(PowerCell3D cell, double h) {
+		for (int i = 0; i < STAGES; i++) {
+			double vx = cell.vx;
+			double vy = cell.vy;
+			double vz = cell.vz;
+			for (int j = 0; j < i; j++) {
+				vx += h * A[i][j] * kax[j];
+				vy += h * A[i][j] * kay[j];
+				vz += h * A[i][j] * kaz[j];
+			}
+			double kd = cell.dragFactor(vx, vy, vz);
+			kvx[i] = vx;
+			kvy[i] = vy;
+			kvz[i] = vz;
+			kax[i] = cell.accelerationX(vx, vy, vz, kd);
+			kay[i] = cell.accelerationY(vx, vy, vz, kd);
+			kaz[i] = cell.accelerationZ(vx, vy, vz, kd);
+		}
+		double ex = 0.0;
+		double ey = 0.0;
+		double ez = 0.0;
+		double evx = 0.0;
+		double evy = 0.0;
+		double evz = 0.0;
+		for (int i = 0; i < STAGES; i++) {
+			ex += E[i] * kvx[i];
+			ey += E[i] * kvy[i];
+			ez += E[i] * kvz[i];
+			evx += E[i] * kax[i];
+			evy += E[i] * kay[i];
+			evz += E[i] * kaz[i];
+		}
+		double ep = Math.max(Math.max(scaled(h * ex, cell.x),
+			scaled(h * ey, cell.y)), scaled(h * ez, cell.z));
+		double ev = Math.max(Math.max(scaled(h * evx, cell.vx),
+			scaled(h * evy, cell.vy)), scaled(h * evz, cell.vz));
+		return Math.max(ep, ev);
+	}
+
+	/** Scale an error estimate by the tolerance */
+	private double scaled(double e, double y) {
+		return Math.abs(e) / (tolerance * (1.0 + Math.abs(y)));
+	}
+
+	/** Accept a step, using the 5th order solution */
+	private void accept(PowerCell cell, double h) {
+		double dx = 0.0;
+		double dy = 0.0;
+		double dvx = 0.0;
+		double dvy = 0.0;
+		for (int i = 0; i < STAGES - 1; i++) {
+			dx += B[i] * kvx[i];
+			dy += B[i] * kvy[i];
+			dvx += B[i] * kax[i];
+			dvy += B[i] * kay[i];
+		}
+		cell.x += h * dx;
+		cell.y += h * dy;
+		cell.vx += h * dvx;
+		cell.vy += h * dvy;
+	}
+
+	/** Accept a step in three dimensions, using the 5th order solution */
+	private void accept(PowerCell3D cell, double h) {
+		double dx = 0.0;
+		double dy = 0.0;
+		double dz = 0.0;
+		double dvx = 0.0;
+		double dvy = 0.0;
+		double dvz = 0.0;
+		for (int i = 0; i < STAGES - 1; i++) {
+			dx += B[i] * kvx[i];
+			dy += B[i] * kvy[i];
+			dz += B[i] * kvz[i];
+			dvx += B[i] * kax[i];
+			dvy += B[i] * kay[i];
+			dvz += B[i] * kaz[i];
+		}
+		cell.x += h * dx;
+		cell.y += h * dy;
+		cell.z += h * dz;
+		cell.vx += h * dvx;
+		cell.vy += h * dvy;
+		cell.vz += h * dvz;
+	}
+}
@@ -0,0 +1,187 @@
+import java.io.DataOutput;
+import java.io.IOException;
+
+/** Physical environment of a venue: gravity and air.
+ *
+ * Environments are immutable, so one can be shared by every simulation in
+ * a run.  Air density and viscosity can be given directly, or calculated
+ * from temperature, pressure and dew point. */
+public class Environment {
+
+	/** Default temperature (degC) */
+	static public final double TEMPERATURE_C = 20.0;
+
+	/** Default air pressure (hPa) */
+	static public final double PRESSURE_HPA = 1016.0;
+
+	/** Default dew point (degC) */
+	static public final double DEW_POINT_C = 10.0;
+
+	/** Zero degC in kelvin */
+	static private final double ZERO_C_K = 273.15;
+
+	/** Specific gas constant of dry air (J / (kg * K)) */
+	static private final double R_DRY_AIR = 287.058;
+
+	/** Specific gas constant of water vapor (J / (kg * K)) */
+	static private final double R_WATER_VAPOR = 461.495;
+
+	/** Sutherland's constant for air (K) */
+	static private final double SUTHERLAND_K = 110.4;
+
+	/** Air mass density at 20 degC, 1016 hPa, dew point 10 degC */
+	static private final double AIR_MASS_DENSITY = 1.2019;
+
+	/** Viscosity coefficient of air at 20 degC (Pa * s) */
+	static private final double AIR_VISCOSITY_COEFFICIENT = 1.83e-5;
+
+	/** Minneapolis, with default air */
+	static public final Environment MINNEAPOLIS = new Environment(
+		"minneapolis", 9.82498, AIR_MASS_DENSITY,
+		AIR_VISCOSITY_COEFFICIENT);
+
+	/** Duluth, with default air */
+	static public final Environment DULUTH = new Environment("duluth",
+		9.82816, AIR_MASS_DENSITY, AIR_VISCOSITY_COEFFICIENT);
+
+	/** Detroit, with default air */
+	static public final Environment DETROIT = new Environment("detroit",
+		9.82025, AIR_MASS_DENSITY, AIR_VISCOSITY_COEFFICIENT);
+
+	/** Earth average gravity, with default air */
+	static public final Environment EARTH = new Environment("earth",
+		9.80665, AIR_MASS_DENSITY, AIR_VISCOSITY_COEFFICIENT);
+
+	/** Known venues */
+	static private final Environment[] VENUES = {
+		MINNEAPOLIS, DULUTH, DETROIT, EARTH,
+	};
+
+	/** Default environment */
+	static public final Environment DEFAULT = MINNEAPOLIS;
+
+	/** Environment name */
+	public final String name;
+
+	/** Acceleration of gravity (m/s^2) */
+	public final double gravity;
+
+	/** Air mass density (kg/m^3) */
+	public final double airDensity;
+
+	/** Air viscosity coefficient (Pa * s) */
+	public final double airViscosity;
+
+	/** Create a new environment */
+	public Environment(String n, double g, double rho, double mu) {
+		name = n;
+		gravity = g;
+		airDensity = rho;
+		airViscosity = mu;
+	}
+
+	/** Create an environment from weather.
+	 * @param n Name.
+	 * @param g Acceleration of gravity (m/s^2).
+	 * @param temp Air temperature (degC).
+	 * @param pressure Air pressure (hPa).
+	 * @param dew Dew point (degC). */
+	static public Environment fromWeather(String n, double g, double temp,
+		double pressure, double dew)
+	{
+		return new Environment(n, g, airDensity(temp, pressure, dew),
+			airViscosity(temp));
+	}
+
+	/** Calculate mass density of humid air (kg/m^3), as the sum of dry
+	 * air and water vapor partial densities */
+	static private double airDensity(double temp, double pressure,
+		double dew)
+	{
+		double t = temp + ZERO_C_K;
+		double pv = vaporPressure(dew);
+		double pd = pressure - pv;
+		// Pressures are in hPa
+		return (pd * 100.0) / (R_DRY_AIR * t) +
+		       (pv * 100.0) / (R_WATER_VAPOR * t);
+	}
+
+	/** Calculate saturation vapor pressure by Tetens' equation (hPa) */
+	static private double vaporPressure(double temp) {
+		return 6.1078 * Math.pow(10.0, 7.5 * temp / (temp + 237.3));
+	}
+
+	/** Calculate viscosity of air by Sutherland's formula (Pa * s),
+	 * scaled to match the default viscosity at the default temperature */
+	static private double airViscosity(double temp) {
+		double t = temp + ZERO_C_K;
+		double t0 = TEMPERATURE_C + ZERO_C_K;
+		return AIR_VISCOSITY_COEFFICIENT * Math.pow(t / t0, 1.5) *
+			(t0 + SUTHERLAND_K) / (t + SUTHERLAND_K);
+	}
+
+	/** Get gravity for a known venue (NaN if unknown) */
+	static private double venueGravity(String venue) {
+		for (Environment v : VENUES) {
+			if (v.name.equals(venue))
+				return v.gravity;
+		}
+		return Double.NaN;
+	}
+
+	/** Parse an environment, such as "duluth temperature=24" or
+	 * "custom gravity=9.81 pressure=990".  The name selects gravity for
+	 * a known venue (minneapolis, duluth, detroit or earth).  Air
+	 * density and viscosity are the defaults, unless temperature,
+	 * pressure or dew point is given. */
+	static public Environment parse(String spec) {
+		String[] t = spec.trim().split("\\s+");
+		String n = t[0];
+		double g = venueGravity(n);
+		double temp = TEMPERATURE_C;
+		double pressure = PRESSURE_HPA;
+		double dew = DEW_POINT_C;
+		boolean weather = false;
+		for (int i = 1; i < t.length; i++) {
+			if (t[i].startsWith("gravity="))
+				g = Double.parseDouble(t[i].substring(8));
+			else if (t[i].startsWith("temperature=")) {
+				temp = Double.parseDouble(t[i].substring(12));
+				weather = true;
+			} else if (t[i].startsWith("pressure=")) {
+				pressure = Double.parseDouble(t[i].substring(9));
+				weather = true;
+			} else if (t[i].startsWith("dewpoint=")) {
+				dew = Double.parseDouble(t[i].substring(9));
+				weather = true;
+			} else
+				throw new IllegalArgumentException(t[i]);
+		}
+		if (Double.isNaN(g))
+			throw new IllegalArgumentException("No gravity for " + n);
+		return weather
+		      ? fromWeather(n, g, temp, pressure, dew)
+		      : new Environment(n, g, AIR_MASS_DENSITY,
+		                        AIR_VISCOSITY_COEFFICIENT);
+	}
+
+	/** Check if another environment has the same physics */
+	public boolean isSamePhysics(Environment o) {
+		return gravity == o.gravity && airDensity == o.airDensity &&
+		       airViscosity == o.airViscosity;
+	}
+
+	/** Write all physical constants, for hashing */
+	void hashConstants(DataOutput out) throws IOException {
+		out.writeDouble(gravity);
+		out.writeDouble(airDensity);
+		out.writeDouble(airViscosity);
+	}
+
+	/** Get a string representation */
+	@Override
+	public String toString() {
+		return name + " gravity=" + gravity + " density=" + airDensity +
+			" viscosity=" + airViscosity;
+	}
+}
@@ -0,0 +1,28 @@
+/** Explicit Euler integrator, with forces applied one after another */
+public class Euler implements Integrator {
+
+	/** Step size (s) */
+	public final double step;
+
+	/** Create a new explicit Euler integrator */
+	public Euler(double s) {
+		step = s;
+	}
+
+	/** Advance a power cell by one step, no longer than max */
+	@Override
+	public double advance(PowerCell cell, double max) {
+		double h = Math.min(step, max);
+		cell.advance(h);
+		return h;
+	}
+
+	/** Advance a power cell in three dimensions by one step, no longer
+	 * than max */
+	@Override
+	public double advance(PowerCell3D cell, double max) {
+		double h = Math.min(step, max);
+		cell.advance(h);
+		return h;
+	}
+}
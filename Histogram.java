@@ -0,0 +1,120 @@
+/** Histogram of non-negative counts, with power of 2 buckets.
+ *
+ * Bucket 0 holds zero, and bucket k holds 2^(k-1) to 2^k - 1.  Adding a
+ * value is one array increment, so histograms can be updated in inner
+ * loops.  Histograms are not thread-safe; merge them when done. */
+public class Histogram {
+
+	/** Number of buckets */
+	static private final int BUCKETS = 64;
+
+	/** Count of values in each bucket */
+	private final long[] buckets = new long[BUCKETS];
+
+	/** Number of values */
+	private long count = 0;
+
+	/** Sum of values */
+	private long sum = 0;
+
+	/** Minimum value */
+	private long min = Long.MAX_VALUE;
+
+	/** Maximum value */
+	private long max = 0;
+
+	/** Get bucket for a value */
+	static private int bucket(long v) {
+		return BUCKETS - Long.numberOfLeadingZeros(Math.max(v, 0));
+	}
+
+	/** Get lowest value in a bucket */
+	static private long bucketMin(int b) {
+		return (b > 0) ? 1L << (b - 1) : 0;
+	}
+
+	/** Get highest value in a bucket */
+	static private long bucketMax(int b) {
+		return (b > 0) ? (1L << (b - 1)) * 2 - 1 : 0;
+	}
+
+	/** Add a value */
+	public void add(long v) {
+		buckets[bucket(v)]++;
+		count++;
+		sum += v;
+		min = Math.min(min, v);
+		max = Math.max(max, v);
+	}
+
+	/** Merge another histogram into this one */
+	public void merge(Histogram h) {
+		for (int b = 0; b < BUCKETS; b++)
+			buckets[b] += h.buckets[b];
+		count += h.count;
+		sum += h.sum;
+		min = Math.min(min, h.min);
+		max = Math.max(max, h.max);
+	}
+
+	/** Get number of values */
+	public long getCount() {
+		return count;
+	}
+
+	/** Get sum of values */
+	public long getSum() {
+		return sum;
+	}
+
+	/** Get mean value */
+	public double getMean() {
+		return (count > 0) ? (double) sum / count : 0.0;
+	}
+
+	/** Get an upper bound for a quantile (0 to 1) */
+	public long getQuantile(double q) {
+		long n = (long) Math.ceil(q * count);
+		long c = 0;
+		for (int b = 0; b < BUCKETS; b++) {
+			c += buckets[b];
+			if (c >= n && c > 0)
+				return Math.min(bucketMax(b), max);
+		}
+		return max;
+	}
+
+	/** Append as a JSON object */
+	public void appendJson(StringBuilder sb) {
+		sb.append("{\"count\": ").append(count);
+		sb.append(", \"sum\": ").append(sum);
+		sb.append(", \"min\": ").append((count > 0) ? min : 0);
+		sb.append(", \"max\": ").append(max);
+		sb.append(", \"mean\": ").append(getMean());
+		sb.append(", \"p50\": ").append(getQuantile(0.5));
+		sb.append(", \"p99\": ").append(getQuantile(0.99));
+		sb.append(", \"buckets\": [");
+		String sep = "";
+		for (int b = 0; b < BUCKETS; b++) {
+			if (buckets[b] > 0) {
+				sb.append(sep).append("{\"min\": ")
+				  .append(bucketMin(b)).append(", \"max\": ")
+				  .append(bucketMax(b)).append(", \"count\": ")
+				  .append(buckets[b]).append('}');
+				sep = ", ";
+			}
+		}
+		sb.append("]}");
+	}
+
+	/** Append non-empty buckets as CSV rows of name, min, max, count */
+	public void appendCsv(StringBuilder sb, String name) {
+		for (int b = 0; b < BUCKETS; b++) {
+			if (buckets[b] > 0) {
+				sb.append(name).append(',').append(bucketMin(b))
+				  .append(',').append(bucketMax(b)).append(',')
+				  .append(buckets[b]).append('\n');
+			}
+		}
+	}
+}
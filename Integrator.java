@@ -0,0 +1,17 @@
+/** Numerical integration scheme for power cell motion */
+public interface Integrator {
+
+	/** Reset for a new flight */
+	default void reset() {
+		// fixed step schemes have no state
+	}
+
+	/** Advance a power cell by one step, no longer than max.
+	 * @return Time advanced (s). */
+	double advance(PowerCell cell, double max);
+
+	/** Advance a power cell in three dimensions by one step, no longer
+	 * than max.
+	 * @return Time advanced (s). */
+	double advance(PowerCell3D cell, double max);
+}
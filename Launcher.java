@@ -1,9 +1,15 @@
+import java.io.DataOutput;
+import java.io.IOException;
+
 /** Power cell launcher */
 public class Launcher {
 
 	/** Elevation of launcher (m) */
 	static private final double ELEVATION_M = 0.9;
 
+	/** Environment */
+	public final Environment environment;
+
 	/** Launch elevation (m) */
 	public final double elevationM;
 
@@ -14,18 +20,37 @@ public class Launcher {
 	public final double rangeM;
 
 	/** Create a new launcher */
-	public Launcher(double a, double r) {
+	public Launcher(Environment env, double a, double r) {
+		environment = env;
 		elevationM = ELEVATION_M;
 		angle = Math.toRadians(a);
 		rangeM = r;
 	}
 
+	/** Write launcher constants, for hashing */
+	static void hashConstants(DataOutput out) throws IOException {
+		out.writeDouble(ELEVATION_M);
+	}
+
 	/** Launch a power cell with velocity (m) */
 	public PowerCell launch(double v) {
+		PowerCell cell = new PowerCell(environment, 0.0, 0.0, 0.0, 0.0);
+		launch(cell, v);
+		return cell;
+	}
+
+	/** Launch an existing power cell again, with velocity (m) */
+	public void launch(PowerCell cell, double v) {
+		launch(cell, v, 0.0);
+	}
+
+	/** Launch an existing power cell again, with velocity (m) and the
+	 * launch angle offset by da (radians) */
+	public void launch(PowerCell cell, double v, double da) {
 		double x = -rangeM;
 		double y = elevationM;
-		double vx = v * Math.cos(angle);
-		double vy = v * Math.sin(angle);
-		return new PowerCell(x, y, vx, vy);
+		double vx = v * Math.cos(angle + da);
+		double vy = v * Math.sin(angle + da);
+		cell.reset(x, y, vx, vy);
 	}
 }
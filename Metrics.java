@@ -0,0 +1,184 @@
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+/** Simulation metrics.
+ *
+ * Each Simulator collects metrics for its own range, with no locking, and
+ * they are merged into a total when the range is done, along with the
+ * shot and step counts the simulator keeps anyway.  Totals can be
+ * written as JSON (histograms and slowest ranges) or CSV (histogram
+ * buckets). */
+public class Metrics {
+
+	/** Number of slowest ranges to keep */
+	static private final int SLOWEST = 20;
+
+	/** Names of histograms, for export */
+	static private final String[] HISTOGRAMS = {
+		"steps_per_shot", "shots_per_range", "micros_per_range",
+		"shots_per_bisection", "iterations_per_bisection",
+		"iterations_per_search", "failed_per_range",
+	};
+
+	/** Cost of one range */
+	static public class RangeCost {
+
+		/** Launch angle (degrees) */
+		public final double angle;
+
+		/** Range (m) */
+		public final double range;
+
+		/** Wall clock time (us) */
+		public final long micros;
+
+		/** Shots simulated */
+		public final long shots;
+
+		/** Integration steps */
+		public final long steps;
+
+		/** Create a new range cost */
+		private RangeCost(double a, double r, long us, long sh, long st) {
+			angle = a;
+			range = r;
+			micros = us;
+			shots = sh;
+			steps = st;
+		}
+	}
+
+	/** Integration steps for each shot */
+	public final Histogram stepsPerShot = new Histogram();
+
+	/** Shots simulated for each range */
+	public final Histogram shotsPerRange = new Histogram();
+
+	/** Wall clock time for each range (us) */
+	public final Histogram microsPerRange = new Histogram();
+
+	/** Shots simulated for each bisection (high or low edge) */
+	public final Histogram shotsPerBisection = new Histogram();
+
+	/** Iterations for each bisection to converge */
+	public final Histogram iterationsPerBisection = new Histogram();
+
+	/** Iterations for each optimal shot search to converge */
+	public final Histogram iterationsPerSearch = new Histogram();
+
+	/** Failed brackets (bisect returning null) for each range */
+	public final Histogram failedPerRange = new Histogram();
+
+	/** Shots simulated (totals only) */
+	private long shots = 0;
+
+	/** Integration steps (totals only) */
+	private long steps = 0;
+
+	/** Failed brackets (for one range) */
+	private long failed = 0;
+
+	/** Slowest ranges, fastest first */
+	private final PriorityQueue<RangeCost> slowest = new PriorityQueue<>(
+		Comparator.comparingLong((RangeCost c) -> c.micros));
+
+	/** Record the integration steps of one shot */
+	public void addShot(long s) {
+		stepsPerShot.add(s);
+	}
+
+	/** Record a bisection */
+	public void addBisection(long sh, int iterations) {
+		shotsPerBisection.add(sh);
+		iterationsPerBisection.add(iterations);
+	}
+
+	/** Record a failed bracket */
+	public void addFailed() {
+		failed++;
+	}
+
+	/** Merge metrics for one range into totals.
+	 * @param sh Shots simulated for the range.
+	 * @param st Integration steps for the range. */
+	public synchronized void mergeRange(Metrics m, double angle,
+		double range, long nanos, long sh, long st)
+	{
+		long us = nanos / 1000;
+		stepsPerShot.merge(m.stepsPerShot);
+		shotsPerBisection.merge(m.shotsPerBisection);
+		iterationsPerBisection.merge(m.iterationsPerBisection);
+		iterationsPerSearch.merge(m.iterationsPerSearch);
+		shotsPerRange.add(sh);
+		microsPerRange.add(us);
+		failedPerRange.add(m.failed);
+		shots += sh;
+		steps += st;
+		failed += m.failed;
+		slowest.add(new RangeCost(angle, range, us, sh, st));
+		if (slowest.size() > SLOWEST)
+			slowest.poll();
+	}
+
+	/** Get all histograms, in the order of HISTOGRAMS */
+	private Histogram[] histograms() {
+		return new Histogram[] {
+			stepsPerShot, shotsPerRange, microsPerRange,
+			shotsPerBisection, iterationsPerBisection,
+			iterationsPerSearch, failedPerRange,
+		};
+	}
+
+	/** Format totals as JSON */
+	public synchronized String toJson() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("{\n  \"ranges\": ").append(microsPerRange.getCount());
+		sb.append(",\n  \"shots\": ").append(shots);
+		sb.append(",\n  \"steps\": ").append(steps);
+		sb.append(",\n  \"failed_brackets\": ").append(failed);
+		sb.append(",\n  \"histograms\": {");
+		Histogram[] hist = histograms();
+		String sep = "\n";
+		for (int i = 0; i < hist.length; i++) {
+			sb.append(sep).append("    \"").append(HISTOGRAMS[i])
+			  .append("\": ");
+			hist[i].appendJson(sb);
+			sep = ",\n";
+		}
+		sb.append("\n  },\n  \"slowest_ranges\": [");
+		ArrayList<RangeCost> costs = new ArrayList<>(slowest);
+		costs.sort(Comparator.comparingLong((RangeCost c) -> -c.micros));
+		sep = "\n";
+		for (RangeCost c : costs) {
+			sb.append(sep).append("    {\"angle\": ").append(c.angle)
+			  .append(", \"range\": ").append(c.range)
+			  .append(", \"micros\": ").append(c.micros)
+			  .append(", \"shots\": ").append(c.shots)
+			  .append(", \"steps\": ").append(c.steps).append('}');
+			sep = ",\n";
+		}
+		sb.append("\n  ]\n}\n");
+		return sb.toString();
+	}
+
+	/** Format histogram buckets as CSV */
+	public synchronized String toCsv() {
+		StringBuilder sb = new StringBuilder("metric,min,max,count\n");
+		Histogram[] hist = histograms();
+		for (int i = 0; i < hist.length; i++)
+			hist[i].appendCsv(sb, HISTOGRAMS[i]);
+		return sb.toString();
+	}
+
+	/** Write totals to a file, as CSV if the name ends with ".csv", or
+	 * JSON otherwise */
+	public void write(String file) throws IOException {
+		try (Writer w = new FileWriter(file)) {
+			w.write(file.endsWith(".csv") ? toCsv() : toJson());
+		}
+	}
+}
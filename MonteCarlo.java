@@ -0,0 +1,292 @@
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+/** Monte Carlo hit probability for a noisy launcher.
+ *
+ * Real launchers vary in velocity and angle from shot to shot.  For each
+ * range, candidate velocities are spread across the inner goal window
+ * found by Simulator (low to high speed, widened by the velocity noise).
+ * Each candidate is launched many times with Gaussian noise added to its
+ * velocity and angle, and the outcomes are counted.  The same noise
+ * samples are used for every candidate at a range, so that candidates are
+ * compared on equal terms.
+ *
+ * Ranges are simulated in parallel.  Each range has its own random number
+ * generator, split in order from one seeded root, so results depend only
+ * on the seed, not on the number of threads or how work is scheduled.
+ *
+ * Usage: MonteCarlo [angle] [options]
+ *
+ *   --ranges=MIN:MAX:STEP     Ranges (cm), default 1:1000:10
+ *   --samples=N               Noisy shots per candidate, default 100
+ *   --candidates=N            Candidate velocities per range, default 21
+ *   --velocity-sigma=SIGMA    Velocity noise (m/s), default 0.05
+ *   --angle-sigma=SIGMA       Angle noise (degrees), default 0.5
+ *   --seed=SEED               Random seed, default 1
+ *   --settings="SETTINGS"     Simulation settings, as Settings.parse
+ *   --environment="ENV"       Environment, as Environment.parse
+ *   --batch=N                 Simulate N noisy shots at once, default 0
+ *                             (one at a time); needs rk4 settings
+ *
+ * Output is CSV, with one row per range: the velocity with the highest
+ * inner goal probability, its inner and outer goal probabilities (outer
+ * includes inner, as Shot.isOuterGoal), and the optimal velocity found by
+ * Simulator with its inner goal probability for comparison. */
+public class MonteCarlo {
+
+	/** Default number of noisy shots per candidate */
+	static private final int SAMPLES = 100;
+
+	/** Default number of candidate velocities per range */
+	static private final int CANDIDATES = 21;
+
+	/** Default velocity noise, standard deviation (m/s) */
+	static private final double VELOCITY_SIGMA = 0.05;
+
+	/** Default angle noise, standard deviation (degrees) */
+	static private final double ANGLE_SIGMA = 0.5;
+
+	/** Candidates extend past the inner goal window by this many
+	 * standard deviations of velocity noise */
+	static private final double WIDEN_SIGMAS = 2.0;
+
+	/** Header for output */
+	static private final String HEADER =
+		"range,velocity,inner,outer,optimal,optimal_inner";
+
+	/** Hit probabilities for one range */
+	static private class Result {
+
+		/** Range (cm) */
+		private final int range;
+
+		/** Velocity with highest inner goal probability (m/s) */
+		private final double velocity;
+
+		/** Inner goal probability at velocity */
+		private final double inner;
+
+		/** Outer goal probability at velocity (including inner) */
+		private final double outer;
+
+		/** Optimal velocity found by Simulator (m/s) */
+		private final double optimal;
+
+		/** Inner goal probability at optimal velocity */
+		private final double optimalInner;
+
+		/** Create a new result */
+		private Result(int r, double v, double in, double out, double opt,
+			double oi)
+		{
+			range = r;
+			velocity = v;
+			inner = in;
+			outer = out;
+			optimal = opt;
+			optimalInner = oi;
+		}
+
+		/** Format as one CSV row */
+		private String format() {
+			return String.format(Locale.ROOT,
+				"%.2f,%.3f,%.4f,%.4f,%.3f,%.4f", range / 100.0,
+				velocity, inner, outer, optimal, optimalInner);
+		}
+	}
+
+	/** Environment */
+	private final Environment env;
+
+	/** Launch angle (degrees) */
+	private final double angle;
+
+	/** Simulation settings */
+	private final Settings settings;
+
+	/** Noisy shots per candidate */
+	private final int samples;
+
+	/** Candidate velocities per range */
+	private final int candidates;
+
+	/** Velocity noise, standard deviation (m/s) */
+	private final double velocitySigma;
+
+	/** Angle noise, standard deviation (degrees) */
+	private final double angleSigma;
+
+	/** Lanes for BatchSimulator (0 to simulate one shot at a time) */
+	private final int lanes;
+
+	/** Create a new Monte Carlo simulation */
+	private MonteCarlo(Environment e, double a, Settings s, int n, int c,
+		double vs, double as, int l)
+	{
+		env = e;
+		angle = a;
+		settings = s;
+		samples = n;
+		candidates = c;
+		velocitySigma = vs;
+		angleSigma = as;
+		lanes = l;
+	}
+
+	/** Get a standard Gaussian random number, by the Box-Muller
+	 * transform */
+	static private double gaussian(SplittableRandom rng) {
+		double u1 = 1.0 - rng.nextDouble(); // (0, 1], so log is finite
+		double u2 = rng.nextDouble();
+		return Math.sqrt(-2.0 * Math.log(u1)) * Math.cos(2.0 * Math.PI *
+			u2);
+	}
+
+	/** Count outcomes of noisy shots around one velocity, with a batch
+	 * simulator if there is one.
+	 * @param outcomes Outcome code of each shot (output).
+	 * @param counts Inner and outer goal counts (output). */
+	private void count(Simulator sim, BatchSimulator batch, double v,
+		double[] dv, double[] da, int[] outcomes, int[] counts)
+	{
+		if (batch != null)
+			batch.simulateOutcomes(v, dv, da, outcomes);
+		else {
+			for (int i = 0; i < samples; i++)
+				outcomes[i] = sim.simulateOutcome(v + dv[i], da[i]);
+		}
+		counts[0] = 0;
+		counts[1] = 0;
+		for (int i = 0; i < samples; i++) {
+			if (outcomes[i] == Outcome.INNER_GOAL)
+				counts[0]++;
+			if (Outcome.isOuterGoal(outcomes[i]))
+				counts[1]++;
+		}
+	}
+
+	/** Find the velocity with the highest inner goal probability for
+	 * one range (cm) */
+	private Result run(int range, SplittableRandom rng) {
+		Speeds s = Simulator.findSpeedsForRanges(env, angle,
+			new int[] { range }, settings)[0];
+		if (!s.isValid())
+			return new Result(range, 0.0, 0.0, 0.0, 0.0, 0.0);
+		double[] dv = new double[samples];
+		double[] da = new double[samples];
+		for (int i = 0; i < samples; i++) {
+			dv[i] = velocitySigma * gaussian(rng);
+			da[i] = Math.toRadians(angleSigma) * gaussian(rng);
+		}
+		Simulator sim = new Simulator(env, angle, range / 100.0,
+			settings);
+		BatchSimulator batch = (lanes > 0)
+		                     ? new BatchSimulator(env, angle,
+		                           range / 100.0, settings, lanes)
+		                     : null;
+		int[] outcomes = new int[samples];
+		double lo = s.low - WIDEN_SIGMAS * velocitySigma;
+		double hi = s.high + WIDEN_SIGMAS * velocitySigma;
+		int[] counts = new int[2];
+		int[] inner = new int[candidates];
+		int[] outer = new int[candidates];
+		int most = 0;
+		for (int c = 0; c < candidates; c++) {
+			count(sim, batch, velocity(lo, hi, c), dv, da, outcomes,
+				counts);
+			inner[c] = counts[0];
+			outer[c] = counts[1];
+			most = Math.max(most, inner[c]);
+		}
+		// Take the middle of candidates tied for most inner goals, which
+		// is furthest from the edges of a plateau
+		int first = -1;
+		int last = -1;
+		for (int c = 0; c < candidates; c++) {
+			if (inner[c] == most) {
+				if (first < 0)
+					first = c;
+				last = c;
+			}
+		}
+		int best = (first + last) / 2;
+		count(sim, batch, s.optimal, dv, da, outcomes, counts);
+		double optInner = (double) counts[0] / samples;
+		// The optimal velocity is a candidate too
+		if (counts[0] > most) {
+			return new Result(range, s.optimal, optInner,
+				(double) counts[1] / samples, s.optimal, optInner);
+		}
+		return new Result(range, velocity(lo, hi, best),
+			(double) inner[best] / samples,
+			(double) outer[best] / samples, s.optimal, optInner);
+	}
+
+	/** Get a candidate velocity, evenly spaced from lo to hi */
+	private double velocity(double lo, double hi, int c) {
+		return lo + (hi - lo) * c / (candidates - 1);
+	}
+
+	/** Run Monte Carlo simulation, and report results as CSV */
+	static public void main(String[] args) {
+		double angle = 45.0;
+		int[] ranges = Settings.parseRanges("1:1000:10");
+		int samples = SAMPLES;
+		int candidates = CANDIDATES;
+		double velocitySigma = VELOCITY_SIGMA;
+		double angleSigma = ANGLE_SIGMA;
+		long seed = 1;
+		Settings settings = Settings.DEFAULT;
+		Environment env = Environment.DEFAULT;
+		int lanes = 0;
+		for (int i = 0; i < args.length; i++) {
+			if (i == 0 && !args[i].startsWith("--"))
+				angle = Double.parseDouble(args[i]);
+			else if (args[i].startsWith("--ranges="))
+				ranges = Settings.parseRanges(args[i].substring(9));
+			else if (args[i].startsWith("--samples="))
+				samples = Integer.parseInt(args[i].substring(10));
+			else if (args[i].startsWith("--candidates="))
+				candidates = Integer.parseInt(args[i].substring(13));
+			else if (args[i].startsWith("--velocity-sigma="))
+				velocitySigma = Double.parseDouble(
+					args[i].substring(17));
+			else if (args[i].startsWith("--angle-sigma="))
+				angleSigma = Double.parseDouble(
+					args[i].substring(14));
+			else if (args[i].startsWith("--seed="))
+				seed = Long.parseLong(args[i].substring(7));
+			else if (args[i].startsWith("--settings="))
+				settings = Settings.parse(args[i].substring(11));
+			else if (args[i].startsWith("--environment="))
+				env = Environment.parse(args[i].substring(14));
+			else if (args[i].startsWith("--batch="))
+				lanes = Integer.parseInt(args[i].substring(8));
+			else
+				throw new IllegalArgumentException(args[i]);
+		}
+		if (samples < 1 || candidates < 2)
+			throw new IllegalArgumentException(
+				"Need 1 or more samples and 2 or more candidates");
+		if (lanes < 0 || (lanes > 0 &&
+		    settings.scheme != Settings.Scheme.RK4))
+		{
+			throw new IllegalArgumentException(
+				"--batch needs 0 or more lanes, and rk4 settings");
+		}
+		MonteCarlo mc = new MonteCarlo(env, angle, settings, samples,
+			candidates, velocitySigma, angleSigma, lanes);
+		// Split generators in range order, before any parallel work
+		SplittableRandom root = new SplittableRandom(seed);
+		SplittableRandom[] rngs = new SplittableRandom[ranges.length];
+		for (int i = 0; i < rngs.length; i++)
+			rngs[i] = root.split();
+		final int[] r = ranges;
+		System.out.println(HEADER);
+		IntStream.range(0, r.length)
+			.parallel()
+			.mapToObj(i -> mc.run(r[i], rngs[i]).format())
+			.forEachOrdered(System.out::println);
+	}
+}
@@ -0,0 +1,304 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/** Deadline-bounded solver for the optimal velocity at one angle and range.
+ *
+ * The solver is anytime: it starts from a parabolic trajectory through the
+ * inner port, then refines it with simulations of increasing accuracy until
+ * the time budget runs out.  The best answer so far is returned, along with
+ * an estimate of its error. */
+public class OnlineSolver {
+
+	/** Settings for each level of refinement, coarsest first */
+	static private final Settings[] LEVELS = {
+		new Settings(Settings.Scheme.DORMAND_PRINCE, 0.01, 1e-4,
+			false),
+		new Settings(Settings.Scheme.DORMAND_PRINCE, 0.002, 1e-6,
+			false),
+		Settings.DEFAULT,
+	};
+
+	/** Velocity threshold for searches (m/s) */
+	static private final double THRESHOLD = 0.0001;
+
+	/** Shot value threshold for searches (m) */
+	static private final double VALUE_THRESHOLD_M = 1e-6;
+
+	/** Smallest step when probing for a bracket (m/s) */
+	static private final double PROBE_STEP = 0.01;
+
+	/** Maximum number of probes for a bracket */
+	static private final int PROBES = 8;
+
+	/** Maximum number of search iterations */
+	static private final int ITERATIONS = 32;
+
+	/** Average time for one simulation at each level (ns), as a moving
+	 * average over recent simulations.  Samples are clipped to twice the
+	 * average, and the average decays whenever a level is skipped, so
+	 * that slow outliers (such as JIT compilation or GC pauses) do not
+	 * stop a level from fitting into short budgets for long.  The first
+	 * level is seeded by timing shots when the class is loaded, and a
+	 * level with no samples yet is seeded from the level before it. */
+	static private final AtomicLongArray COST =
+		new AtomicLongArray(LEVELS.length);
+
+	/** Launch angle for timing the first level (degrees) */
+	static private final double SEED_ANGLE = 45.0;
+
+	/** Range for timing the first level (m) */
+	static private final double SEED_RANGE_M = 3.0;
+
+	/** Number of shots simulated to seed the first level */
+	static private final int SEED_SHOTS = 16;
+
+	/** Number of seed shots which are timed */
+	static private final int SEED_TIMED = 4;
+
+	static {
+		Launcher launcher = new Launcher(Environment.DEFAULT,
+			SEED_ANGLE, SEED_RANGE_M);
+		double v = Trajectory.velocityToPort(launcher, Port.INNER);
+		// Early shots load and compile the simulator, so seed with
+		// the slowest of the last few, before it is fully compiled
+		long cost = 1;
+		for (int i = 0; i < SEED_SHOTS; i++) {
+			Simulator sim = new Simulator(Environment.DEFAULT,
+				SEED_ANGLE, SEED_RANGE_M, LEVELS[0]);
+			long start = System.nanoTime();
+			sim.simulate(v + i * PROBE_STEP);
+			long d = System.nanoTime() - start;
+			if (i >= SEED_SHOTS - SEED_TIMED)
+				cost = Math.max(cost, d);
+		}
+		COST.set(0, cost);
+	}
+
+	/** Optimal velocity found by the solver */
+	static public class Solution {
+
+		/** Optimal velocity (m/s), or 0 if none */
+		public final double velocity;
+
+		/** Estimated error of velocity (m/s).  Infinite when only the
+		 * parabolic estimate is available. */
+		public final double error;
+
+		/** Refinement level (-1 for parabolic estimate) */
+		public final int level;
+
+		/** Number of shots simulated */
+		public final int simulations;
+
+		/** Does the shot score an inner goal? (false if unknown) */
+		public final boolean innerGoal;
+
+		/** Create a new solution */
+		private Solution(double v, double e, int l, int s, boolean ig) {
+			velocity = v;
+			error = e;
+			level = l;
+			simulations = s;
+			innerGoal = ig;
+		}
+
+		/** Get a string representation */
+		@Override
+		public String toString() {
+			return "velocity: " + velocity + "  error: " + error +
+				"  level: " + level + "  simulations: " +
+				simulations + (innerGoal ? "  INNER GOAL!" : "");
+		}
+	}
+
+	/** Environment */
+	private final Environment env;
+
+	/** Launch angle (degrees) */
+	private final double angle;
+
+	/** Range (m) */
+	private final double range;
+
+	/** Deadline (System.nanoTime) */
+	private final long deadline;
+
+	/** Number of shots simulated */
+	private int simulations = 0;
+
+	/** Best solution so far */
+	private Solution best;
+
+	/** Create a new on-line solver */
+	private OnlineSolver(Environment e, double a, double r, long budget) {
+		env = e;
+		angle = a;
+		range = r;
+		deadline = System.nanoTime() + budget;
+	}
+
+	/** Estimate the cost ratio between a level and the one before it.
+	 * Steps scale with the maximum step, or with the fifth root of the
+	 * tolerance for Dormand-Prince, so take the larger of the two. */
+	static private double costRatio(int level) {
+		Settings p = LEVELS[level - 1];
+		Settings s = LEVELS[level];
+		return Math.max(p.step / s.step,
+			Math.pow(p.tolerance / s.tolerance, 0.2));
+	}
+
+	/** Get the average cost at one level, seeding it if needed */
+	static private long getCost(int level) {
+		long c = COST.get(level);
+		if (c == 0 && level > 0) {
+			long p = getCost(level - 1);
+			COST.compareAndSet(level, 0,
+				(long) Math.ceil(p * costRatio(level)));
+			c = COST.get(level);
+		}
+		return c;
+	}
+
+	/** Check whether another simulation could run past the deadline */
+	private boolean expired(int level) {
+		boolean e = System.nanoTime() + getCost(level) - deadline >= 0;
+		if (e)
+			COST.updateAndGet(level, c -> c - c / 8);
+		return e;
+	}
+
+	/** Simulate a shot, keeping track of simulation time.
+	 * @return Shot, or null if it could run past the deadline. */
+	private Shot simulate(Simulator sim, int level, double v) {
+		if (expired(level))
+			return null;
+		long start = System.nanoTime();
+		Shot shot = sim.simulate(v);
+		long d = System.nanoTime() - start;
+		COST.updateAndGet(level, c -> (c > 0)
+			? c + (Math.min(d, 2 * c) - c) / 8
+			: d);
+		simulations++;
+		return shot;
+	}
+
+	/** Refine a velocity at one level, by bracketing the optimal shot and
+	 * then searching with Illinois regula falsi.  The best solution is
+	 * replaced by a converged result, or by a partial one with a smaller
+	 * estimated error.
+	 * @return true if the search converged. */
+	private boolean refine(int level, double prev, double step) {
+		if (expired(level))
+			return false;
+		Simulator sim = new Simulator(env, angle, range, LEVELS[level]);
+		Shot lo = simulate(sim, level, prev);
+		if (lo == null)
+			return false;
+		Shot hi = lo;
+		double dv = (lo.value() > 0.0) ? -step : step;
+		for (int i = 0; i < PROBES; i++) {
+			if (lo.value() <= 0.0 && hi.value() > 0.0)
+				break;
+			Shot probe = simulate(sim, level, prev + dv);
+			if (probe == null)
+				return false;
+			if (probe.value() > 0.0)
+				hi = probe;
+			else
+				lo = probe;
+			dv *= 2.0;
+		}
+		if (!(lo.value() <= 0.0 && hi.value() > 0.0))
+			return false;
+		double flo = lo.value();
+		double fhi = hi.value();
+		Shot shot = hi;
+		int side = 0;
+		boolean converged = false;
+		for (int i = 0; i < ITERATIONS && !converged; i++) {
+			double v = (lo.velocity * fhi - hi.velocity * flo) /
+				(fhi - flo);
+			Shot s = simulate(sim, level, v);
+			if (s == null)
+				break;
+			shot = s;
+			double f = shot.value();
+			if (f > 0) {
+				hi = shot;
+				fhi = f;
+				if (side > 0)
+					flo /= 2.0;
+				side = 1;
+			} else {
+				lo = shot;
+				flo = f;
+				if (side < 0)
+					fhi /= 2.0;
+				side = -1;
+			}
+			converged = hi.velocity - lo.velocity < THRESHOLD ||
+			            Math.abs(f) < VALUE_THRESHOLD_M;
+		}
+		// Root lies within bracket, near the secant of true values
+		double width = hi.velocity - lo.velocity;
+		double slope = (hi.value() - lo.value()) / width;
+		double v = converged
+		      ? shot.velocity
+		      : lo.velocity - lo.value() / slope;
+		double f = converged ? shot.value() : 0.0;
+		double err = Math.min(width, Math.abs(f / slope)) +
+			Math.abs(v - prev);
+		if (converged || err < best.error) {
+			best = new Solution(v, err, level, simulations,
+				converged && shot.isInnerGoal());
+		}
+		return converged;
+	}
+
+	/** Solve for the optimal velocity */
+	private Solution solve() {
+		Launcher launcher = new Launcher(env, angle, range);
+		double v = Trajectory.velocityToPort(launcher, Port.INNER);
+		best = new Solution(v, Double.POSITIVE_INFINITY, -1, 0, false);
+		if (v <= 0.0)
+			return best;
+		for (int level = 0; level < LEVELS.length; level++) {
+			double prev = best.velocity;
+			double step = Math.max(Math.min(best.error, 1.0),
+				PROBE_STEP);
+			if (!refine(level, prev, step))
+				break;
+		}
+		return new Solution(best.velocity, best.error, best.level,
+			simulations, best.innerGoal);
+	}
+
+	/** Find the optimal velocity within a time budget.
+	 * A simulation is not started unless it is expected to finish
+	 * within the budget, based on the average time at the same level.
+	 * @param env Environment.
+	 * @param angle Launch angle (degrees).
+	 * @param range Range (m).
+	 * @param budget Time budget (ns).
+	 * @return Best solution found. */
+	static public Solution solve(Environment env, double angle,
+		double range, long budget)
+	{
+		return new OnlineSolver(env, angle, range, budget).solve();
+	}
+
+	/** Solve for one shot.
+	 *
+	 * Usage: OnlineSolver [angle] [range] [budget ms] ["environment"] */
+	static public void main(String[] args) {
+		double angle = Double.parseDouble(args[0]);
+		double range = Double.parseDouble(args[1]);
+		double ms = (args.length > 2) ? Double.parseDouble(args[2]) : 2.0;
+		Environment env = (args.length > 3)
+		                ? Environment.parse(args[3])
+		                : Environment.DEFAULT;
+		long start = System.nanoTime();
+		Solution s = solve(env, angle, range, (long) (ms * 1e6));
+		long elapsed = System.nanoTime() - start;
+		System.out.println(s + "  time: " + elapsed / 1e6 + " ms");
+	}
+}
@@ -0,0 +1,39 @@
+/** Outcome of a shot, as a primitive code */
+public class Outcome {
+
+	/** Shot missed both ports */
+	static public final int MISS = 0;
+
+	/** Shot scored an outer goal, but not an inner goal */
+	static public final int OUTER_GOAL = 1;
+
+	/** Shot scored an inner goal */
+	static public final int INNER_GOAL = 2;
+
+	/** Classify the final state of a power cell */
+	static public int classify(PowerCell cell) {
+		if (cell.checkRange() || cell.checkCollision())
+			return MISS;
+		else if (cell.past(Port.INNER))
+			return INNER_GOAL;
+		else if (cell.past(Port.OUTER))
+			return OUTER_GOAL;
+		else
+			return MISS;
+	}
+
+	/** Check if an outcome scores an outer goal (inner goals also pass
+	 * through the outer port) */
+	static public boolean isOuterGoal(int outcome) {
+		return outcome >= OUTER_GOAL;
+	}
+
+	/** Get a string representation of an outcome */
+	static public String toString(int outcome) {
+		switch (outcome) {
+		case INNER_GOAL: return "INNER GOAL!";
+		case OUTER_GOAL: return "OUTER GOAL!";
+		default: return "MISS!";
+		}
+	}
+}
@@ -1,3 +1,6 @@
+import java.io.DataOutput;
+import java.io.IOException;
+
 /** Port for Power Cells */
 public class Port {
 
@@ -35,6 +38,13 @@ public class Port {
 	/** Recessed distance (m) */
 	public final double recessedM;
 
+	/** Write port geometry, for hashing */
+	void hashConstants(DataOutput out) throws IOException {
+		out.writeDouble(elevationM);
+		out.writeDouble(heightM);
+		out.writeDouble(recessedM);
+	}
+
 	/** Get elevation at top of port */
 	public double top() {
 		return elevationM + heightM / 2.0;
@@ -53,6 +63,53 @@ public class Port {
 		        cell.checkCollision(recessedM, bottom()));
 	}
 
+	/** Find a port / power cell collision along a straight path.  The
+	 * path must lie where the power cell overlaps the port plane, and
+	 * its start must already have been checked.
+	 * @return Fraction of the path at the collision, or -1 if none. */
+	public double findCollision(double x0, double y0, double x1,
+		double y1)
+	{
+		if (y1 < bottom() || y1 > top())
+			return 1.0;
+		double t = closestApproach(x0, y0, x1, y1, top());
+		double b = closestApproach(x0, y0, x1, y1, bottom());
+		boolean ht = distance(x0, y0, x1, y1, t, top()) <
+			PowerCell.RADIUS_M;
+		boolean hb = distance(x0, y0, x1, y1, b, bottom()) <
+			PowerCell.RADIUS_M;
+		if (ht && hb)
+			return Math.min(t, b);
+		else if (ht)
+			return t;
+		else if (hb)
+			return b;
+		else
+			return -1.0;
+	}
+
+	/** Get fraction of a path closest to a port edge */
+	private double closestApproach(double x0, double y0, double x1,
+		double y1, double py)
+	{
+		double dx = x1 - x0;
+		double dy = y1 - y0;
+		double len2 = dx * dx + dy * dy;
+		if (len2 <= 0.0)
+			return 0.0;
+		double t = ((recessedM - x0) * dx + (py - y0) * dy) / len2;
+		return Math.max(0.0, Math.min(1.0, t));
+	}
+
+	/** Get distance from a point along a path to a port edge */
+	private double distance(double x0, double y0, double x1, double y1,
+		double t, double py)
+	{
+		double x = x0 + (x1 - x0) * t;
+		double y = y0 + (y1 - y0) * t;
+		return Math.hypot(x - recessedM, y - py);
+	}
+
 	/** Check if a power cell has passed the port, but is out of range */
 	public boolean checkRange(PowerCell cell) {
 		return cell.x >= recessedM &&
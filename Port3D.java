@@ -0,0 +1,131 @@
+/** Port for power cells in three dimensions.
+ *
+ * A port is an opening in a vertical plane, facing the field, centered
+ * laterally on Z = 0.  The power cell collides with the port when it
+ * overlaps the plane, and its center is outside the opening or closer to
+ * the rim than its radius.
+ *
+ * Collision checks start with two broad-phase tests on distance from the
+ * port center: inside a circle clear of the rim, there is no collision, and
+ * outside a circle around the opening, there is.  Only near the rim is the
+ * exact shape checked. */
+abstract public class Port3D {
+
+	/** Distance across outer port, between left and right corners
+	 * (30 inches) */
+	static private final double OUTER_WIDTH_M = 0.762;
+
+	/** Outer port, a hexagon with flat top and bottom */
+	static public final Port3D OUTER = new Hexagon("OUTER",
+		Port.OUTER.elevationM, Port.OUTER.recessedM, OUTER_WIDTH_M / 2.0);
+
+	/** Inner port, a circle recessed behind the outer port */
+	static public final Port3D INNER = new Circle("INNER",
+		Port.INNER.elevationM, Port.INNER.recessedM,
+		Port.INNER.heightM / 2.0);
+
+	/** Port name */
+	public final String name;
+
+	/** Elevation of center (m) */
+	public final double elevationM;
+
+	/** Recessed distance (m) */
+	public final double recessedM;
+
+	/** Square of distance from center where the power cell is clear of
+	 * the rim (m^2) */
+	private final double clear2;
+
+	/** Square of distance from center outside the opening (m^2) */
+	private final double outside2;
+
+	/** Create a new port.
+	 * @param inside Radius of largest circle inside the opening (m).
+	 * @param around Radius of smallest circle around the opening (m). */
+	protected Port3D(String n, double elevation, double recessed,
+		double inside, double around)
+	{
+		name = n;
+		elevationM = elevation;
+		recessedM = recessed;
+		double c = Math.max(0.0, inside - PowerCell.RADIUS_M);
+		clear2 = c * c;
+		outside2 = around * around;
+	}
+
+	/** Check for a collision with a power cell at a position, which
+	 * overlaps the port plane */
+	public boolean checkCollision(double x, double y, double z) {
+		double dy = y - elevationM;
+		double r2 = dy * dy + z * z;
+		if (r2 <= clear2)
+			return false;
+		if (r2 >= outside2)
+			return true;
+		double d = rimDistance(dy, z);
+		if (d < 0.0)
+			return true;
+		double dx = x - recessedM;
+		return d * d + dx * dx < PowerCell.RADIUS_M * PowerCell.RADIUS_M;
+	}
+
+	/** Get the distance from a point in the port plane to the rim.
+	 * @param dy Elevation from port center (m).
+	 * @param z Lateral position from port center (m).
+	 * @return Distance (m), negative if outside the opening. */
+	abstract protected double rimDistance(double dy, double z);
+
+	/** Hexagonal port, with flat top and bottom */
+	static private class Hexagon extends Port3D {
+
+		/** Sine of 60 degrees */
+		static private final double SIN_60 = Math.sqrt(3.0) / 2.0;
+
+		/** Distance from center to left and right corners (m) */
+		private final double radius;
+
+		/** Distance from center to top and bottom sides (m) */
+		private final double apothem;
+
+		/** Create a hexagonal port */
+		private Hexagon(String n, double elevation, double recessed,
+			double r)
+		{
+			super(n, elevation, recessed, r * SIN_60, r);
+			radius = r;
+			apothem = r * SIN_60;
+		}
+
+		@Override
+		protected double rimDistance(double dy, double z) {
+			double ay = Math.abs(dy);
+			double az = Math.abs(z);
+			// Inside a convex polygon, the nearest rim point is on the
+			// nearest side
+			double flat = apothem - ay;
+			double slant = (radius - az - ay / Math.sqrt(3.0)) * SIN_60;
+			return Math.min(flat, slant);
+		}
+	}
+
+	/** Circular port */
+	static private class Circle extends Port3D {
+
+		/** Radius of opening (m) */
+		private final double radius;
+
+		/** Create a circular port */
+		private Circle(String n, double elevation, double recessed,
+			double r)
+		{
+			super(n, elevation, recessed, r, r);
+			radius = r;
+		}
+
+		@Override
+		protected double rimDistance(double dy, double z) {
+			return radius - Math.hypot(dy, z);
+		}
+	}
+}
@@ -1,18 +1,12 @@
+import java.io.DataOutput;
+import java.io.IOException;
+
 /** A power cell is a yellow ball used as a projectile */
 public class PowerCell {
 
-	/** Acceleration of gravity (m/s^2) */
-	static public final double GRAVITY = 9.82498;
-
 	/** Radius of the sphere is 3.5 inches */
 	static public final double RADIUS_M = 0.0889;
 
-	/** Mass density of air at 20 degC, 1016 hPa, dew point 10 degC */
-	static private final double AIR_MASS_DENSITY = 1.2019;
-
-	/** Viscosity coefficient of air at 20 degC (Pa * s) */
-	static private final double AIR_VISCOSITY_COEFFICIENT = 1.83e-5;
-
 	/** Reference length of power cell (diameter) */
 	static private final double REFERENCE_LENGTH = RADIUS_M * 2;
 
@@ -45,25 +39,122 @@ public class PowerCell {
 		{ 10000000, 0.46 },
 	};
 
-	/** Estimate the drag coefficient from reynolds number */
-	static private double dragCoefficient(double rn) {
+	/** Drag coefficient at zero Reynolds number, where interpolation of
+	 * DRAG_TABLE starts */
+	static private final double ZERO_DRAG_COEFFICIENT = 2.0;
+
+	/** Largest drag coefficient, at any Reynolds number */
+	static private final double MAX_DRAG_COEFFICIENT = maxDragCoefficient();
+
+	/** Find the largest drag coefficient in DRAG_TABLE, or at zero
+	 * Reynolds number */
+	static private double maxDragCoefficient() {
+		double cd = ZERO_DRAG_COEFFICIENT;
+		for (double[] row : DRAG_TABLE)
+			cd = Math.max(cd, row[1]);
+		return cd;
+	}
+
+	/** Tangential velocity per unit velocity (an approximation with no
+	 * basis in fact) */
+	static private final double SPIN_RATIO = 0.25;
+
+	/** Magnus lift coefficient per unit spin ratio */
+	static private final double LIFT_PER_SPIN = 0.2;
+
+	/** Drag coefficient lookup subdivides each power of 2 in Reynolds
+	 * number into 2^LOOKUP_BITS cells.  The cell index is taken directly
+	 * from the exponent and top mantissa bits, so cells are about 6%
+	 * wide, which is narrower than any gap between DRAG_TABLE rows. */
+	static private final int LOOKUP_BITS = 4;
+
+	/** Shift from raw double bits to lookup cell index */
+	static private final int LOOKUP_SHIFT = 52 - LOOKUP_BITS;
+
+	/** Raw lookup index of first cell (Reynolds number 1) */
+	static private final int LOOKUP_BASE =
+		(int) (Double.doubleToRawLongBits(1.0) >>> LOOKUP_SHIFT);
+
+	/** Number of lookup cells (Reynolds number 1 to 2^24) */
+	static private final int LOOKUP_CELLS = 24 << LOOKUP_BITS;
+
+	/** Interpolation segment at start of each lookup cell */
+	static private final int[] LOOKUP_SEGMENT = new int[LOOKUP_CELLS];
+
+	/** Reynolds number where each lookup cell moves to the next
+	 * segment (infinite if it stays in one segment) */
+	static private final double[] LOOKUP_SPLIT = new double[LOOKUP_CELLS];
+
+	/** Drag coefficient at zero for each interpolation segment */
+	static private final double[] SEGMENT_OFFSET =
+		new double[DRAG_TABLE.length + 1];
+
+	/** Drag coefficient slope for each interpolation segment */
+	static private final double[] SEGMENT_SLOPE =
+		new double[DRAG_TABLE.length + 1];
+
+	/** Build drag coefficient lookup table.  Segment i ends at row i of
+	 * DRAG_TABLE, and the last segment continues at a constant value. */
+	static {
 		double r0 = 0.0;
-		double cd0 = 2.0;
+		double cd0 = ZERO_DRAG_COEFFICIENT;
 		for (int i = 0; i < DRAG_TABLE.length; i++) {
 			double r1 = DRAG_TABLE[i][0];
 			double cd1 = DRAG_TABLE[i][1];
-			if (rn <= r1) {
-				// Linear interpolation
-				double t = (rn - r0) / (r1 - r0);
-				return cd0 + (cd1 - cd0) * t;
-			}
+			SEGMENT_SLOPE[i] = (cd1 - cd0) / (r1 - r0);
+			SEGMENT_OFFSET[i] = cd0 - SEGMENT_SLOPE[i] * r0;
 			r0 = r1;
 			cd0 = cd1;
 		}
-		// Shouldn't ever get to here
-		return cd0;
+		SEGMENT_SLOPE[DRAG_TABLE.length] = 0.0;
+		SEGMENT_OFFSET[DRAG_TABLE.length] = cd0;
+		for (int c = 0; c < LOOKUP_CELLS; c++) {
+			double lo = cellStart(c);
+			double hi = cellStart(c + 1);
+			int seg = 0;
+			double split = Double.POSITIVE_INFINITY;
+			for (int i = 0; i < DRAG_TABLE.length; i++) {
+				double r = DRAG_TABLE[i][0];
+				if (r < lo)
+					seg++;
+				else if (r < hi) {
+					if (split < hi) {
+						throw new IllegalStateException(
+							"DRAG_TABLE rows too close");
+					}
+					split = r;
+				}
+			}
+			LOOKUP_SEGMENT[c] = seg;
+			LOOKUP_SPLIT[c] = split;
+		}
+	}
+
+	/** Get Reynolds number at start of a lookup cell */
+	static private double cellStart(int c) {
+		return Double.longBitsToDouble(
+			(long) (LOOKUP_BASE + c) << LOOKUP_SHIFT);
+	}
+
+	/** Estimate the drag coefficient from reynolds number.  This is
+	 * linear interpolation of DRAG_TABLE, found in constant time. */
+	static private double dragCoefficient(double rn) {
+		int c = (int) (Double.doubleToRawLongBits(rn) >>> LOOKUP_SHIFT) -
+			LOOKUP_BASE;
+		c = Math.max(0, Math.min(LOOKUP_CELLS - 1, c));
+		int i = LOOKUP_SEGMENT[c] + ((rn > LOOKUP_SPLIT[c]) ? 1 : 0);
+		return SEGMENT_OFFSET[i] + SEGMENT_SLOPE[i] * rn;
 	}
 
+	/** Acceleration of gravity (m/s^2) */
+	private final double gravity;
+
+	/** Air mass density (kg/m^3) */
+	private final double airDensity;
+
+	/** Reynolds number per unit velocity (s/m) */
+	private final double reynoldsPerVelocity;
+
 	/** Displacement from target, starting with negative range (m) */
 	public double x;
 
@@ -77,16 +168,33 @@ public class PowerCell {
 	public double vy;
 
 	/** Tangential velocity (m/s) */
-	private final double tv;
+	private double tv;
+
+	/** Magnus acceleration factor (1/s).  Magnus acceleration is this
+	 * factor times the velocity vector, rotated 90 degrees (backspin) */
+	private double magnusFactor;
+
+	/** Create a power cell in an environment */
+	public PowerCell(Environment env, double x, double y, double vx,
+		double vy)
+	{
+		gravity = env.gravity;
+		airDensity = env.airDensity;
+		reynoldsPerVelocity = env.airDensity * REFERENCE_LENGTH /
+			env.airViscosity;
+		reset(x, y, vx, vy);
+	}
 
-	/** Create a power cell */
-	public PowerCell(double x, double y, double vx, double vy) {
+	/** Reset a power cell to a new launch state, so that it can be
+	 * reused for another shot */
+	public void reset(double x, double y, double vx, double vy) {
 		this.x = x;
 		this.y = y;
 		this.vx = vx;
 		this.vy = vy;
-		// Approximate tangential velocity with no basis in fact
-		tv = velocity() / 4.0;
+		tv = velocity() * SPIN_RATIO;
+		magnusFactor = 0.5 * airDensity * REFERENCE_AREA *
+			liftCoefficient(1.0) / MASS_KG;
 	}
 
 	/** Get the velocity (m/s) */
@@ -118,7 +226,7 @@ public class PowerCell {
 	public void advance(double t) {
 		x += vx * t;
 		y += vy * t;
-		vy -= GRAVITY * t;
+		vy -= gravity * t;
 		double v = velocity();
 		double d = calculateDrag(t, v);
 		double m = calculateMagnusEffect(t, v);
@@ -126,9 +234,43 @@ public class PowerCell {
 		applyMagnus(v, m, t);
 	}
 
+	/** Calculate drag acceleration factor (1/s) for a velocity.  Drag
+	 * acceleration is this factor times the velocity vector. */
+	public double dragFactor(double v) {
+		return 0.5 * airDensity * v * REFERENCE_AREA *
+			dragCoefficient(reynoldsNumber(v)) / MASS_KG;
+	}
+
+	/** Calculate an upper bound of drag factor (1/s) for any velocity
+	 * up to v */
+	public double maxDragFactor(double v) {
+		return 0.5 * airDensity * v * REFERENCE_AREA *
+			MAX_DRAG_COEFFICIENT / MASS_KG;
+	}
+
+	/** Get acceleration of gravity (m/s^2) */
+	public double getGravity() {
+		return gravity;
+	}
+
+	/** Get the Magnus acceleration factor (1/s) */
+	public double getMagnusFactor() {
+		return magnusFactor;
+	}
+
+	/** Get X acceleration (m/s^2) for a velocity and drag factor */
+	public double accelerationX(double vx, double vy, double kd) {
+		return -kd * vx - magnusFactor * vy;
+	}
+
+	/** Get Y acceleration (m/s^2) for a velocity and drag factor */
+	public double accelerationY(double vx, double vy, double kd) {
+		return -gravity - kd * vy + magnusFactor * vx;
+	}
+
 	/** Calculate the aerodynamic drag acceleration */
 	private double calculateDrag(double t, double v) {
-		double drag = 0.5 * AIR_MASS_DENSITY * v * v * REFERENCE_AREA *
+		double drag = 0.5 * airDensity * v * v * REFERENCE_AREA *
 			dragCoefficient(reynoldsNumber(v));
 		// F = ma, so a = F / m
 		return drag / MASS_KG;
@@ -146,13 +288,12 @@ public class PowerCell {
 
 	/** Calculate the Reynolds number based on velocity */
 	private double reynoldsNumber(double v) {
-		return v * AIR_MASS_DENSITY * REFERENCE_LENGTH /
-			AIR_VISCOSITY_COEFFICIENT;
+		return v * reynoldsPerVelocity;
 	}
 
 	/** Calculate the magnus effect */
 	private double calculateMagnusEffect(double t, double v) {
-		double lift = 0.5 * AIR_MASS_DENSITY * v * v * REFERENCE_AREA *
+		double lift = 0.5 * airDensity * v * v * REFERENCE_AREA *
 			liftCoefficient(v);
 		// F = ma, so a = F / m
 		return lift / MASS_KG;
@@ -171,7 +312,7 @@ public class PowerCell {
 	/** Calculate the magnus lift coefficient */
 	private double liftCoefficient(double v) {
 		double spin = tv / v;
-		return spin * 0.2;
+		return spin * LIFT_PER_SPIN;
 	}
 
 	/** Check collision with targets */
@@ -199,6 +340,19 @@ public class PowerCell {
 		       Port.INNER.checkRange(this);
 	}
 
+	/** Write all power cell constants, for hashing */
+	static void hashConstants(DataOutput out) throws IOException {
+		out.writeDouble(RADIUS_M);
+		out.writeDouble(MASS_KG);
+		out.writeDouble(SPIN_RATIO);
+		out.writeDouble(LIFT_PER_SPIN);
+		out.writeInt(DRAG_TABLE.length);
+		for (double[] row : DRAG_TABLE) {
+			out.writeDouble(row[0]);
+			out.writeDouble(row[1]);
+		}
+	}
+
 	/** Run this class to test drag coefficient function */
 	static public void main(String[] args) {
 		double rn = Double.parseDouble(args[0]);
@@ -0,0 +1,124 @@
+/** A power cell in three dimensions.
+ *
+ * X is toward the target wall, Y is up and Z is to the left, looking at the
+ * wall.  Drag and Magnus coefficients are the same as for PowerCell, which
+ * computes them.  Magnus acceleration is the Magnus factor times the cross
+ * product of the spin axis and velocity.  For backspin about the Z axis,
+ * this is the same acceleration as PowerCell uses in two dimensions. */
+public class PowerCell3D {
+
+	/** Power cell used for aerodynamic coefficients */
+	private final PowerCell aero;
+
+	/** Acceleration of gravity (m/s^2) */
+	private final double gravity;
+
+	/** Displacement from outer port plane, negative before it (m) */
+	public double x;
+
+	/** Elevation from floor, positive up (m) */
+	public double y;
+
+	/** Lateral displacement from port center, positive left (m) */
+	public double z;
+
+	/** Velocity in X direction (m/s) */
+	public double vx;
+
+	/** Velocity in Y direction (m/s) */
+	public double vy;
+
+	/** Velocity in Z direction (m/s) */
+	public double vz;
+
+	/** Spin axis, X component of unit vector */
+	private double sx;
+
+	/** Spin axis, Y component of unit vector */
+	private double sy;
+
+	/** Spin axis, Z component of unit vector */
+	private double sz;
+
+	/** Magnus acceleration factor (1/s) */
+	private double magnusFactor;
+
+	/** Create a power cell in an environment */
+	public PowerCell3D(Environment env) {
+		aero = new PowerCell(env, 0.0, 0.0, 0.0, 0.0);
+		gravity = env.gravity;
+	}
+
+	/** Reset to a new launch state, with a spin axis (unit vector) */
+	public void reset(double x, double y, double z, double vx, double vy,
+		double vz, double sx, double sy, double sz)
+	{
+		this.x = x;
+		this.y = y;
+		this.z = z;
+		this.vx = vx;
+		this.vy = vy;
+		this.vz = vz;
+		this.sx = sx;
+		this.sy = sy;
+		this.sz = sz;
+		// Spin, and so the Magnus factor, depends on launch speed
+		aero.reset(0.0, 0.0, velocity(), 0.0);
+		magnusFactor = aero.getMagnusFactor();
+	}
+
+	/** Get acceleration of gravity (m/s^2) */
+	public double getGravity() {
+		return gravity;
+	}
+
+	/** Get the velocity (m/s) */
+	public double velocity() {
+		return Math.sqrt(vx * vx + vy * vy + vz * vz);
+	}
+
+	/** Get X acceleration (m/s^2) for a velocity and drag factor */
+	public double accelerationX(double vx, double vy, double vz,
+		double kd)
+	{
+		return -kd * vx + magnusFactor * (sy * vz - sz * vy);
+	}
+
+	/** Get Y acceleration (m/s^2) for a velocity and drag factor */
+	public double accelerationY(double vx, double vy, double vz,
+		double kd)
+	{
+		return -gravity - kd * vy + magnusFactor * (sz * vx - sx * vz);
+	}
+
+	/** Get Z acceleration (m/s^2) for a velocity and drag factor */
+	public double accelerationZ(double vx, double vy, double vz,
+		double kd)
+	{
+		return -kd * vz + magnusFactor * (sx * vy - sy * vx);
+	}
+
+	/** Get drag factor (1/s) for a velocity */
+	public double dragFactor(double vx, double vy, double vz) {
+		return aero.dragFactor(Math.sqrt(vx * vx + vy * vy + vz * vz));
+	}
+
+	/** Advance by one explicit Euler step, with forces applied one
+	 * after another, as PowerCell.advance does in two dimensions */
+	public void advance(double t) {
+		x += vx * t;
+		y += vy * t;
+		z += vz * t;
+		vy -= gravity * t;
+		double kd = dragFactor(vx, vy, vz);
+		vx -= kd * vx * t;
+		vy -= kd * vy * t;
+		vz -= kd * vz * t;
+		double mx = magnusFactor * (sy * vz - sz * vy);
+		double my = magnusFactor * (sz * vx - sx * vz);
+		double mz = magnusFactor * (sx * vy - sy * vx);
+		vx += mx * t;
+		vy += my * t;
+		vz += mz * t;
+	}
+}
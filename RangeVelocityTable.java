@@ -1,17 +1,36 @@
 import java.io.BufferedReader;
 import java.io.FileReader;
+import java.io.IOException;
+import java.nio.DoubleBuffer;
 
 /** Table of range to power cell velocity for a specific launch angle */
 public class RangeVelocityTable {
 
-    /** Table of range in cm to power cell velocity (optimal, max, min) */
-    private final double[][] range_velocity = new double[1000][3];
+    /** Tolerance for matching angles in a combined table (degrees) */
+    static private final double ANGLE_TOLERANCE = 1e-6;
+
+    /** Number of velocity columns (optimal, max, min) */
+    static private final int COLUMNS = 3;
+
+    /** Range of first row (m) */
+    private final double first_range;
+
+    /** Range step between rows (m) */
+    private final double range_step;
+
+    /** Number of rows */
+    private final int ranges;
+
+    /** Table of range to power cell velocity (optimal, max, min), one
+     * row per range step.  For binary tables, this is a view directly
+     * into the mapped file. */
+    private final DoubleBuffer range_velocity;
 
     /** Get velocity for a given range (m) */
     private double getValue(double range, int col) {
-        int cm = (int) Math.round(range * 100.0);
-        if (cm > 0 && cm < 1000)
-            return range_velocity[cm][col];
+        int i = (int) Math.round((range - first_range) / range_step);
+        if (i >= 0 && i < ranges)
+            return range_velocity.get(i * COLUMNS + col);
         else
             return 0.0;
     }
@@ -31,8 +50,22 @@ public class RangeVelocityTable {
         return getValue(range, 2);
     }
 
+    /** Create a new range velocity table with one row per cm */
+    private RangeVelocityTable() {
+        this(0.0, 0.01, DoubleBuffer.allocate(1000 * COLUMNS));
+    }
+
+    /** Create a new range velocity table from a velocity buffer */
+    RangeVelocityTable(double first, double step, DoubleBuffer rv) {
+        first_range = first;
+        range_step = step;
+        ranges = rv.capacity() / COLUMNS;
+        range_velocity = rv;
+    }
+
     /** Create a new range velocity table from a file */
     private RangeVelocityTable(String file) throws Exception {
+        this();
         FileReader fr = new FileReader(file);
         BufferedReader br = new BufferedReader(fr);
         for (int i = 1; i < 1000; i++) {
@@ -41,9 +74,9 @@ public class RangeVelocityTable {
             double optimal = Double.parseDouble(v[0]);
             double max = Double.parseDouble(v[1]);
             double min = Double.parseDouble(v[2]);
-            range_velocity[i][0] = optimal;
-            range_velocity[i][1] = max;
-            range_velocity[i][2] = min;
+            range_velocity.put(i * COLUMNS, optimal);
+            range_velocity.put(i * COLUMNS + 1, max);
+            range_velocity.put(i * COLUMNS + 2, min);
         }
     }
 
@@ -52,9 +85,27 @@ public class RangeVelocityTable {
         this("range_velocity_" + angle + ".csv");
     }
 
-    /** Create a new empty range velocity table */
-    private RangeVelocityTable() {
-        // empty
+    /** Create a new range velocity table for one angle from a combined
+     * table file, with rows of angle, range, optimal, max and min */
+    private RangeVelocityTable(String file, double angle) throws Exception {
+        this();
+        try (BufferedReader br = new BufferedReader(new FileReader(file))) {
+            String line = br.readLine(); // header
+            while ((line = br.readLine()) != null) {
+                String[] v = line.split(",");
+                double a = Double.parseDouble(v[0]);
+                if (Math.abs(a - angle) < ANGLE_TOLERANCE) {
+                    int cm = (int) Math.round(
+                        Double.parseDouble(v[1]) * 100.0);
+                    if (cm > 0 && cm < 1000) {
+                        for (int c = 0; c < COLUMNS; c++) {
+                            range_velocity.put(cm * COLUMNS + c,
+                                Double.parseDouble(v[2 + c]));
+                        }
+                    }
+                }
+            }
+        }
     }
 
     /** Load a range velocity table */
@@ -68,9 +119,36 @@ public class RangeVelocityTable {
         }
     }
 
-    static public void main(String[] args) {
-        int angle = Integer.parseInt(args[0]);
-        RangeVelocityTable table = load(angle);
+    /** Load a range velocity table for one angle in a combined table */
+    static public RangeVelocityTable load(String file, double angle) {
+        try {
+            return new RangeVelocityTable(file, angle);
+        }
+        catch (Exception e) {
+            e.printStackTrace();
+            return new RangeVelocityTable();
+        }
+    }
+
+    /** Load a range velocity table for one angle from a binary table
+     * file.  Velocities are read directly from the mapped file, with no
+     * parsing or copying.
+     * @throws IOException if the file is missing, corrupt or does not
+     *         contain the angle. */
+    static public RangeVelocityTable loadBinary(String file, double angle)
+        throws IOException
+    {
+        return TableFile.map(file).getTable(angle);
+    }
+
+    static public void main(String[] args) throws IOException {
+        RangeVelocityTable table;
+        if (args.length > 1 && args[1].endsWith(".bin"))
+            table = loadBinary(args[1], Double.parseDouble(args[0]));
+        else if (args.length > 1)
+            table = load(args[1], Double.parseDouble(args[0]));
+        else
+            table = load(Integer.parseInt(args[0]));
         for (int i = 0; i < 1000; i++) {
             double range = i / 100.0;
             double optimal = table.getOptimal(range);
@@ -0,0 +1,277 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+
+/** Persistent cache of speeds found for blocks of ranges.
+ *
+ * Each cache file holds results for one set of parameters, and is named by
+ * a SHA-256 hash of every constant and setting which affects the speeds
+ * found.  Changing any of them, such as gravity or one DRAG_TABLE row,
+ * selects a new file, so stale results are never reused.  Within a file,
+ * blocks are keyed by angle and range.
+ *
+ * Records are appended as soon as each block is found, and flushed to disk
+ * at periodic checkpoints, so an interrupted sweep can be resumed by
+ * running it again.  A record torn by an interruption fails its checksum,
+ * and is dropped when the file is next opened.  All values are big-endian.
+ *
+ * Offset | Type   | Field
+ * -------|--------|------------------------------------------------
+ *      0 | int    | Magic number ("PCRC")
+ *      4 | int    | Format version
+ *      8 | record | Records, each:
+ *        | double |   Launch angle (degrees)
+ *        | int    |   First range (cm)
+ *        | int    |   Number of ranges
+ *        | double |   Velocity data [range][optimal, high, low]
+ *        | int    |   CRC-32 of the above
+ */
+public class ResultCache implements Closeable {
+
+	/** Magic number ("PCRC") */
+	static private final int MAGIC = 0x50435243;
+
+	/** Format version */
+	static private final int VERSION = 1;
+
+	/** Simulation model version.  Bump this when simulation code changes
+	 * in a way that no hashed constant captures. */
+	static private final int MODEL = 2;
+
+	/** Size of file header (bytes) */
+	static private final int HEADER_BYTES = 8;
+
+	/** Size of record header: angle, first range and count (bytes) */
+	static private final int RECORD_BYTES = 16;
+
+	/** Number of velocity columns (optimal, high, low) */
+	static private final int COLUMNS = 3;
+
+	/** Most ranges in one record */
+	static private final int MAX_RANGES = 100000;
+
+	/** Time between checkpoints, where records are forced to disk (ns) */
+	static private final long CHECKPOINT_NS = 10_000_000_000L;
+
+	/** Path of cache file */
+	private final Path path;
+
+	/** Speeds for each block, by key */
+	private final ConcurrentHashMap<String, Speeds[]> blocks =
+		new ConcurrentHashMap<>();
+
+	/** File output stream, for forcing to disk */
+	private final FileOutputStream file;
+
+	/** Buffered record output */
+	private final DataOutputStream out;
+
+	/** Time of last checkpoint (ns) */
+	private long checkpoint = System.nanoTime();
+
+	/** Blocks found in the cache */
+	private final LongAdder hits = new LongAdder();
+
+	/** Blocks not found in the cache */
+	private final LongAdder misses = new LongAdder();
+
+	/** Open (or create) the cache file for an environment and settings.
+	 * @param dir Cache directory, created if needed.
+	 * @param env Environment.
+	 * @param settings Simulation settings. */
+	public ResultCache(String dir, Environment env, Settings settings)
+		throws IOException
+	{
+		Path d = Paths.get(dir);
+		Files.createDirectories(d);
+		path = d.resolve(hashParameters(env, settings) + ".cache");
+		long valid = Files.exists(path) ? load() : 0;
+		if (valid < HEADER_BYTES) {
+			try (DataOutputStream h = new DataOutputStream(
+				new FileOutputStream(path.toFile())))
+			{
+				h.writeInt(MAGIC);
+				h.writeInt(VERSION);
+			}
+		} else if (valid < Files.size(path)) {
+			// Drop a record torn by an interruption
+			try (FileChannel ch = FileChannel.open(path,
+				StandardOpenOption.WRITE))
+			{
+				ch.truncate(valid);
+			}
+		}
+		file = new FileOutputStream(path.toFile(), true);
+		out = new DataOutputStream(new BufferedOutputStream(file));
+	}
+
+	/** Hash all constants and settings which affect speeds found.
+	 * @return SHA-256 hash, in hex. */
+	static private String hashParameters(Environment env,
+		Settings settings) throws IOException
+	{
+		MessageDigest md;
+		try {
+			md = MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		try (DataOutputStream h = new DataOutputStream(
+			new DigestOutputStream(OutputStream.nullOutputStream(),
+			md)))
+		{
+			h.writeInt(MODEL);
+			env.hashConstants(h);
+			Simulator.hashConstants(h);
+			settings.hashConstants(h);
+		}
+		StringBuilder sb = new StringBuilder();
+		for (byte b : md.digest())
+			sb.append(String.format("%02x", b));
+		return sb.toString();
+	}
+
+	/** Get key for a block of ranges */
+	static private String key(double angle, int first, int count) {
+		return angle + ":" + first + ":" + count;
+	}
+
+	/** Load all valid records from the cache file.
+	 * @return Length of valid data (bytes), or 0 if the file is not a
+	 *         cache file. */
+	private long load() throws IOException {
+		long valid = 0;
+		try (DataInputStream in = new DataInputStream(
+			new BufferedInputStream(new FileInputStream(
+			path.toFile()))))
+		{
+			if (in.readInt() != MAGIC || in.readInt() != VERSION)
+				return 0;
+			valid = HEADER_BYTES;
+			while (true) {
+				byte[] head = new byte[RECORD_BYTES];
+				in.readFully(head);
+				ByteBuffer h = ByteBuffer.wrap(head);
+				double angle = h.getDouble();
+				int first = h.getInt();
+				int count = h.getInt();
+				if (count < 1 || count > MAX_RANGES)
+					return valid;
+				byte[] data = new byte[count * COLUMNS *
+					Double.BYTES];
+				in.readFully(data);
+				CRC32 crc = new CRC32();
+				crc.update(head);
+				crc.update(data);
+				if (in.readInt() != (int) crc.getValue())
+					return valid;
+				blocks.put(key(angle, first, count),
+					decode(data, count));
+				valid += RECORD_BYTES + data.length +
+					Integer.BYTES;
+			}
+		}
+		catch (EOFException e) {
+			// End of file, or a torn record
+			return valid;
+		}
+	}
+
+	/** Decode velocity data for a block */
+	static private Speeds[] decode(byte[] data, int count) {
+		ByteBuffer b = ByteBuffer.wrap(data);
+		Speeds[] speeds = new Speeds[count];
+		for (int i = 0; i < count; i++) {
+			double o = b.getDouble();
+			double h = b.getDouble();
+			double l = b.getDouble();
+			speeds[i] = (o > 0.0)
+			          ? new Speeds(o, h, l)
+			          : Speeds.NONE;
+		}
+		return speeds;
+	}
+
+	/** Get cached speeds for a block of ranges (cm).
+	 * @return Speeds for each range, or null if not cached. */
+	public Speeds[] get(double angle, int first, int last) {
+		Speeds[] speeds = blocks.get(key(angle, first,
+			last - first + 1));
+		if (speeds != null)
+			hits.increment();
+		else
+			misses.increment();
+		return speeds;
+	}
+
+	/** Add speeds for a block of ranges (cm), starting at first */
+	public synchronized void put(double angle, int first, Speeds[] speeds)
+		throws IOException
+	{
+		ByteBuffer b = ByteBuffer.allocate(RECORD_BYTES +
+			speeds.length * COLUMNS * Double.BYTES);
+		b.putDouble(angle);
+		b.putInt(first);
+		b.putInt(speeds.length);
+		for (Speeds s : speeds) {
+			b.putDouble(s.optimal);
+			b.putDouble(s.high);
+			b.putDouble(s.low);
+		}
+		CRC32 crc = new CRC32();
+		crc.update(b.array());
+		out.write(b.array());
+		out.writeInt((int) crc.getValue());
+		// Hand each record to the OS, so that it survives if the
+		// process is killed, but only force to disk at checkpoints
+		out.flush();
+		long now = System.nanoTime();
+		if (now - checkpoint >= CHECKPOINT_NS) {
+			file.getFD().sync();
+			checkpoint = now;
+		}
+		blocks.put(key(angle, first, speeds.length), speeds);
+	}
+
+	/** Get number of blocks found in the cache */
+	public long getHits() {
+		return hits.sum();
+	}
+
+	/** Get number of blocks not found in the cache */
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	/** Force all records to disk, and close the cache file */
+	@Override
+	public synchronized void close() throws IOException {
+		try {
+			out.flush();
+			file.getFD().sync();
+		}
+		finally {
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,268 @@
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/** Streaming writer for range velocity results.
+ *
+ * Rows are written in two stages.  Workers encode a block of rows to bytes
+ * in parallel, with no shared state, and then the encoded blocks are
+ * written in order.  Writing only copies bytes into a buffer, so parallel
+ * workers never wait on each other for formatting or output. */
+abstract public class ResultWriter implements Closeable {
+
+	/** Size of output buffer (bytes) */
+	static private final int BUFFER_SIZE = 1 << 16;
+
+	/** Scale for fraction digits */
+	static private final double SCALE = 1000.0;
+
+	/** Longest CSV row (angle, range, optimal, high, low) */
+	static private final int MAX_ROW = 5 * 24;
+
+	/** Number of velocity columns (optimal, high, low) */
+	static private final int COLUMNS = 3;
+
+	/** Encode rows for a block of adjacent ranges.  This is thread-safe.
+	 * @param angle Launch angle (degrees).
+	 * @param first First range (cm).
+	 * @param speeds Speeds for each range. */
+	abstract public byte[] encode(double angle, int first, Speeds[] speeds);
+
+	/** Write encoded rows, in order */
+	abstract public void write(byte[] rows) throws IOException;
+
+	/** Create a writer.
+	 * @param path Output file, or null for standard output.  Files ending
+	 *             with ".bin" are written as binary tables (TableFile).
+	 * @param env Environment, recorded in binary tables.
+	 * @param angles Launch angles, evenly spaced (degrees).
+	 * @param ranges Number of ranges for each angle.
+	 * @param grid Write angle and range columns (with a header) in CSV. */
+	static public ResultWriter create(String path, Environment env,
+		double[] angles, int ranges, boolean grid) throws IOException
+	{
+		if (path != null && path.endsWith(".bin"))
+			return new Binary(path, env, angles, ranges);
+		return (path != null)
+		      ? new Csv(new FileOutputStream(path), true, grid)
+		      : new Csv(System.out, false, grid);
+	}
+
+	/** Append a non-negative integer as ASCII digits */
+	static private int appendLong(byte[] buf, int pos, long n) {
+		int start = pos;
+		do {
+			buf[pos++] = (byte) ('0' + (n % 10));
+			n /= 10;
+		} while (n > 0);
+		// Reverse digits
+		for (int i = start, j = pos - 1; i < j; i++, j--) {
+			byte b = buf[i];
+			buf[i] = buf[j];
+			buf[j] = b;
+		}
+		return pos;
+	}
+
+	/** Append a value with 3 fraction digits, always using '.' as the
+	 * decimal separator, with no grouping */
+	static private int appendFixed(byte[] buf, int pos, double v) {
+		long n = Math.round(Math.abs(v) * SCALE);
+		if (v < 0.0 && n > 0)
+			buf[pos++] = '-';
+		pos = appendLong(buf, pos, n / (long) SCALE);
+		buf[pos++] = '.';
+		long f = n % (long) SCALE;
+		for (long d = (long) SCALE / 10; d > 0; d /= 10) {
+			buf[pos++] = (byte) ('0' + f / d);
+			f %= d;
+		}
+		return pos;
+	}
+
+	/** CSV result writer */
+	static private class Csv extends ResultWriter {
+
+		/** Buffered output stream */
+		private final OutputStream out;
+
+		/** Close the stream when done (false for standard output) */
+		private final boolean owned;
+
+		/** Write angle and range columns */
+		private final boolean grid;
+
+		/** Create a CSV writer */
+		private Csv(OutputStream os, boolean o, boolean g)
+			throws IOException
+		{
+			out = new BufferedOutputStream(os, BUFFER_SIZE);
+			owned = o;
+			grid = g;
+			if (grid) {
+				out.write("angle,range,optimal,high,low\n".getBytes(
+					StandardCharsets.US_ASCII));
+			}
+		}
+
+		@Override
+		public byte[] encode(double angle, int first, Speeds[] speeds) {
+			byte[] buf = new byte[speeds.length * MAX_ROW];
+			int pos = 0;
+			for (int i = 0; i < speeds.length; i++) {
+				if (grid) {
+					pos = appendFixed(buf, pos, angle);
+					buf[pos++] = ',';
+					pos = appendFixed(buf, pos, (first + i) / 100.0);
+					buf[pos++] = ',';
+				}
+				pos = appendSpeeds(buf, pos, speeds[i]);
+			}
+			return Arrays.copyOf(buf, pos);
+		}
+
+		/** Append one row of speeds */
+		private int appendSpeeds(byte[] buf, int pos, Speeds s) {
+			if (s.isValid()) {
+				pos = appendFixed(buf, pos, s.optimal);
+				buf[pos++] = ',';
+				pos = appendFixed(buf, pos, s.high);
+				buf[pos++] = ',';
+				pos = appendFixed(buf, pos, s.low);
+			} else {
+				buf[pos++] = '0';
+				buf[pos++] = ',';
+				buf[pos++] = '0';
+				buf[pos++] = ',';
+				buf[pos++] = '0';
+			}
+			buf[pos++] = '\n';
+			return pos;
+		}
+
+		@Override
+		public void write(byte[] rows) throws IOException {
+			out.write(rows);
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (owned)
+				out.close();
+			else
+				out.flush();
+		}
+	}
+
+	/** Binary result writer, in TableFile format.  Velocity data is
+	 * streamed after space for the header, which is written with the
+	 * checksum when closed. */
+	static private class Binary extends ResultWriter {
+
+		/** File channel */
+		private final FileChannel channel;
+
+		/** Environment */
+		private final Environment env;
+
+		/** Number of angles */
+		private final int angles;
+
+		/** Number of ranges for each angle */
+		private final int ranges;
+
+		/** First angle (degrees) */
+		private final double firstAngle;
+
+		/** Angle step (degrees) */
+		private final double angleStep;
+
+		/** Output buffer */
+		private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+		/** Checksum of velocity data */
+		private final CRC32 crc = new CRC32();
+
+		/** Number of rows written */
+		private long rows = 0;
+
+		/** Create a binary writer */
+		private Binary(String path, Environment e, double[] a, int r)
+			throws IOException
+		{
+			channel = FileChannel.open(Paths.get(path),
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+			channel.position(TableFile.HEADER_BYTES);
+			env = e;
+			angles = a.length;
+			ranges = r;
+			firstAngle = a[0];
+			angleStep = (a.length > 1)
+			           ? (a[a.length - 1] - a[0]) / (a.length - 1)
+			           : 0.0;
+		}
+
+		@Override
+		public byte[] encode(double angle, int first, Speeds[] speeds) {
+			ByteBuffer b = ByteBuffer.allocate(speeds.length * COLUMNS *
+				Double.BYTES);
+			for (Speeds s : speeds) {
+				b.putDouble(s.optimal);
+				b.putDouble(s.high);
+				b.putDouble(s.low);
+			}
+			return b.array();
+		}
+
+		@Override
+		public void write(byte[] r) throws IOException {
+			crc.update(r);
+			rows += r.length / (COLUMNS * Double.BYTES);
+			int off = 0;
+			while (off < r.length) {
+				int n = Math.min(buffer.remaining(), r.length - off);
+				buffer.put(r, off, n);
+				off += n;
+				if (!buffer.hasRemaining())
+					flush();
+			}
+		}
+
+		/** Flush output buffer to the channel */
+		private void flush() throws IOException {
+			buffer.flip();
+			while (buffer.hasRemaining())
+				channel.write(buffer);
+			buffer.clear();
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				flush();
+				if (rows != (long) angles * ranges) {
+					throw new IOException("Expected " +
+						(long) angles * ranges + " rows, got " + rows);
+				}
+				ByteBuffer header = TableFile.header(env, angles,
+					ranges, firstAngle, angleStep, crc.getValue());
+				channel.position(0);
+				while (header.hasRemaining())
+					channel.write(header);
+			}
+			finally {
+				channel.close();
+			}
+		}
+	}
+}
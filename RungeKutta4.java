@@ -0,0 +1,85 @@
+/** Classic 4th order Runge-Kutta integrator */
+public class RungeKutta4 implements Integrator {
+
+	/** Step size (s) */
+	public final double step;
+
+	/** Create a new Runge-Kutta integrator */
+	public RungeKutta4(double s) {
+		step = s;
+	}
+
+	/** Advance a power cell by one step, no longer than max */
+	@Override
+	public double advance(PowerCell cell, double max) {
+		double h = Math.min(step, max);
+		// Stage velocities are also position derivatives
+		double vx1 = cell.vx;
+		double vy1 = cell.vy;
+		double kd = cell.dragFactor(Math.hypot(vx1, vy1));
+		double ax1 = cell.accelerationX(vx1, vy1, kd);
+		double ay1 = cell.accelerationY(vx1, vy1, kd);
+		double vx2 = vx1 + 0.5 * h * ax1;
+		double vy2 = vy1 + 0.5 * h * ay1;
+		kd = cell.dragFactor(Math.hypot(vx2, vy2));
+		double ax2 = cell.accelerationX(vx2, vy2, kd);
+		double ay2 = cell.accelerationY(vx2, vy2, kd);
+		double vx3 = vx1 + 0.5 * h * ax2;
+		double vy3 = vy1 + 0.5 * h * ay2;
+		kd = cell.dragFactor(Math.hypot(vx3, vy3));
+		double ax3 = cell.accelerationX(vx3, vy3, kd);
+		double ay3 = cell.accelerationY(vx3, vy3, kd);
+		double vx4 = vx1 + h * ax3;
+		double vy4 = vy1 + h * ay3;
+		kd = cell.dragFactor(Math.hypot(vx4, vy4));
+		double ax4 = cell.accelerationX(vx4, vy4, kd);
+		double ay4 = cell.accelerationY(vx4, vy4, kd);
+		cell.x += h / 6.0 * (vx1 + 2.0 * vx2 + 2.0 * vx3 + vx4);
+		cell.y += h / 6.0 * (vy1 + 2.0 * vy2 + 2.0 * vy3 + vy4);
+		cell.vx += h / 6.0 * (ax1 + 2.0 * ax2 + 2.0 * ax3 + ax4);
+		cell.vy += h / 6.0 * (ay1 + 2.0 * ay2 + 2.0 * ay3 + ay4);
+		return h;
+	}
+
+	/** Advance a power cell in three dimensions by one step, no longer
+	 * than max */
+	@Override
+	public double advance(PowerCell3D cell, double max) {
+		double h = Math.min(step, max);
+		double vx1 = cell.vx;
+		double vy1 = cell.vy;
+		double vz1 = cell.vz;
+		double kd = cell.dragFactor(vx1, vy1, vz1);
+		double ax1 = cell.accelerationX(vx1, vy1, vz1, kd);
+		double ay1 = cell.accelerationY(vx1, vy1, vz1, kd);
+		double az1 = cell.accelerationZ(vx1, vy1, vz1, kd);
+		double vx2 = vx1 + 0.5 * h * ax1;
+		double vy2 = vy1 + 0.5 * h * ay1;
+		double vz2 = vz1 + 0.5 * h * az1;
+		kd = cell.dragFactor(vx2, vy2, vz2);
+		double ax2 = cell.accelerationX(vx2, vy2, vz2, kd);
+		double ay2 = cell.accelerationY(vx2, vy2, vz2, kd);
+		double az2 = cell.accelerationZ(vx2, vy2, vz2, kd);
+		double vx3 = vx1 + 0.5 * h * ax2;
+		double vy3 = vy1 + 0.5 * h * ay2;
+		double vz3 = vz1 + 0.5 * h * az2;
+		kd = cell.dragFactor(vx3, vy3, vz3);
+		double ax3 = cell.accelerationX(vx3, vy3, vz3, kd);
+		double ay3 = cell.accelerationY(vx3, vy3, vz3, kd);
+		double az3 = cell.accelerationZ(vx3, vy3, vz3, kd);
+		double vx4 = vx1 + h * ax3;
+		double vy4 = vy1 + h * ay3;
+		double vz4 = vz1 + h * az3;
+		kd = cell.dragFactor(vx4, vy4, vz4);
+		double ax4 = cell.accelerationX(vx4, vy4, vz4, kd);
+		double ay4 = cell.accelerationY(vx4, vy4, vz4, kd);
+		double az4 = cell.accelerationZ(vx4, vy4, vz4, kd);
+		cell.x += h / 6.0 * (vx1 + 2.0 * vx2 + 2.0 * vx3 + vx4);
+		cell.y += h / 6.0 * (vy1 + 2.0 * vy2 + 2.0 * vy3 + vy4);
+		cell.z += h / 6.0 * (vz1 + 2.0 * vz2 + 2.0 * vz3 + vz4);
+		cell.vx += h / 6.0 * (ax1 + 2.0 * ax2 + 2.0 * ax3 + ax4);
+		cell.vy += h / 6.0 * (ay1 + 2.0 * ay2 + 2.0 * ay3 + ay4);
+		cell.vz += h / 6.0 * (az1 + 2.0 * az2 + 2.0 * az3 + az4);
+		return h;
+	}
+}
@@ -0,0 +1,44 @@
+/** Semi-implicit (symplectic) Euler integrator.  Velocity is updated
+ * first, then position is moved with the new velocity. */
+public class SemiImplicitEuler implements Integrator {
+
+	/** Step size (s) */
+	public final double step;
+
+	/** Create a new semi-implicit Euler integrator */
+	public SemiImplicitEuler(double s) {
+		step = s;
+	}
+
+	/** Advance a power cell by one step, no longer than max */
+	@Override
+	public double advance(PowerCell cell, double max) {
+		double h = Math.min(step, max);
+		double kd = cell.dragFactor(cell.velocity());
+		double ax = cell.accelerationX(cell.vx, cell.vy, kd);
+		double ay = cell.accelerationY(cell.vx, cell.vy, kd);
+		cell.vx += ax * h;
+		cell.vy += ay * h;
+		cell.x += cell.vx * h;
+		cell.y += cell.vy * h;
+		return h;
+	}
+
+	/** Advance a power cell in three dimensions by one step, no longer
+	 * than max */
+	@Override
+	public double advance(PowerCell3D cell, double max) {
+		double h = Math.min(step, max);
+		double kd = cell.dragFactor(cell.vx, cell.vy, cell.vz);
+		double ax = cell.accelerationX(cell.vx, cell.vy, cell.vz, kd);
+		double ay = cell.accelerationY(cell.vx, cell.vy, cell.vz, kd);
+		double az = cell.accelerationZ(cell.vx, cell.vy, cell.vz, kd);
+		cell.vx += ax * h;
+		cell.vy += ay * h;
+		cell.vz += az * h;
+		cell.x += cell.vx * h;
+		cell.y += cell.vy * h;
+		cell.z += cell.vz * h;
+		return h;
+	}
+}
@@ -0,0 +1,161 @@
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.stream.IntStream;
+
+/** Simulation settings */
+public class Settings {
+
+	/** Numerical integration schemes */
+	static public enum Scheme {
+		EULER(0.00001),
+		SEMI_IMPLICIT_EULER(0.00001),
+		VERLET(0.0001),
+		RK4(0.001),
+		DORMAND_PRINCE(0.001);
+
+		/** Default step size (maximum step for adaptive schemes) */
+		public final double defaultStep;
+
+		/** Create a scheme */
+		private Scheme(double s) {
+			defaultStep = s;
+		}
+
+		/** Parse a scheme name, such as "rk4" or "dormand-prince" */
+		static public Scheme parse(String name) {
+			return valueOf(name.toUpperCase().replace('-', '_'));
+		}
+	}
+
+	/** Default error tolerance for adaptive integration */
+	static public final double TOLERANCE = 1e-9;
+
+	/** Default settings */
+	static public final Settings DEFAULT = new Settings(
+		Scheme.DORMAND_PRINCE, Scheme.DORMAND_PRINCE.defaultStep,
+		TOLERANCE, false);
+
+	/** Integration scheme */
+	public final Scheme scheme;
+
+	/** Step size, or maximum step for adaptive schemes (s) */
+	public final double step;
+
+	/** Error tolerance for adaptive schemes */
+	public final double tolerance;
+
+	/** Warm start each range from speeds found for the previous range */
+	public final boolean continuation;
+
+	/** Create new simulation settings */
+	public Settings(Scheme sc, double s, double tol, boolean c) {
+		scheme = sc;
+		step = s;
+		tolerance = tol;
+		continuation = c;
+	}
+
+	/** Create a new integrator (one per thread) */
+	public Integrator createIntegrator() {
+		switch (scheme) {
+		case EULER:
+			return new Euler(step);
+		case SEMI_IMPLICIT_EULER:
+			return new SemiImplicitEuler(step);
+		case VERLET:
+			return new VelocityVerlet(step);
+		case RK4:
+			return new RungeKutta4(step);
+		default:
+			return new DormandPrince(tolerance, step);
+		}
+	}
+
+	/** Write all settings, for hashing */
+	void hashConstants(DataOutput out) throws IOException {
+		out.writeUTF(scheme.name());
+		out.writeDouble(step);
+		out.writeDouble(tolerance);
+		out.writeBoolean(continuation);
+	}
+
+	/** Parse settings in the form of toString, such as
+	 * "rk4 step=0.005 continuation".  The step defaults to the
+	 * default for the scheme. */
+	static public Settings parse(String spec) {
+		String[] t = spec.trim().split("\\s+");
+		Scheme sc = Scheme.parse(t[0]);
+		double s = sc.defaultStep;
+		double tol = TOLERANCE;
+		boolean c = false;
+		for (int i = 1; i < t.length; i++) {
+			if (t[i].startsWith("step="))
+				s = Double.parseDouble(t[i].substring(5));
+			else if (t[i].startsWith("tolerance="))
+				tol = Double.parseDouble(t[i].substring(10));
+			else if ("continuation".equals(t[i]))
+				c = true;
+			else
+				throw new IllegalArgumentException(t[i]);
+		}
+		return new Settings(sc, s, tol, c);
+	}
+
+	/** Describe a bad range spec */
+	static private String badRanges(String spec) {
+		return "Ranges must be MIN:MAX:STEP, with STEP above 0 and " +
+			"MIN no more than MAX: " + spec;
+	}
+
+	/** Parse a range spec, such as "1:1000:10" (cm).
+	 * @throws IllegalArgumentException unless the step is positive and
+	 *         min is no more than max. */
+	static public int[] parseRanges(String spec) {
+		String[] v = spec.split(":");
+		if (v.length != 3)
+			throw new IllegalArgumentException(badRanges(spec));
+		int min = Integer.parseInt(v[0]);
+		int max = Integer.parseInt(v[1]);
+		int step = Integer.parseInt(v[2]);
+		if (step <= 0 || min > max)
+			throw new IllegalArgumentException(badRanges(spec));
+		return IntStream.iterate(min, r -> r <= max, r -> r + step)
+			.toArray();
+	}
+
+	/** Describe a bad grid of angles */
+	static private String badAngles(String grid) {
+		return "Angles must be MIN:MAX:STEP, with STEP above 0 and " +
+			"MIN no more than MAX: " + grid;
+	}
+
+	/** Parse a grid of angles, such as "30:60:0.5" (degrees).
+	 * @throws IllegalArgumentException unless the step is positive and
+	 *         min is no more than max. */
+	static public double[] parseAngles(String grid) {
+		String[] v = grid.split(":");
+		if (v.length != 3)
+			throw new IllegalArgumentException(badAngles(grid));
+		double min = Double.parseDouble(v[0]);
+		double max = Double.parseDouble(v[1]);
+		double step = Double.parseDouble(v[2]);
+		// Comparisons are written to also reject NaN
+		if (!(step > 0.0) || !(min <= max))
+			throw new IllegalArgumentException(badAngles(grid));
+		int n = (int) Math.round((max - min) / step) + 1;
+		double[] angles = new double[n];
+		for (int i = 0; i < n; i++)
+			angles[i] = min + i * step;
+		return angles;
+	}
+
+	/** Get a string representation */
+	@Override
+	public String toString() {
+		String s = scheme.name().toLowerCase().replace('_', '-') +
+			" step=" + step;
+		if (scheme == Scheme.DORMAND_PRINCE)
+			s += " tolerance=" + tolerance;
+		return continuation ? s + " continuation" : s;
+	}
+}
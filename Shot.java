@@ -2,11 +2,15 @@ import java.text.NumberFormat;
 
 /** A single simulated shot of a power cell */
 public class Shot {
-	static private final NumberFormat DISTANCE = NumberFormat.getInstance();
-	static {
-		DISTANCE.setMinimumFractionDigits(3);
-		DISTANCE.setMaximumFractionDigits(3);
-	}
+
+	/** Distance format (not thread-safe, so one per thread) */
+	static private final ThreadLocal<NumberFormat> DISTANCE =
+		ThreadLocal.withInitial(() -> {
+			NumberFormat f = NumberFormat.getInstance();
+			f.setMinimumFractionDigits(3);
+			f.setMaximumFractionDigits(3);
+			return f;
+		});
 
 	/** Horizontal range (m) */
 	public final double range;
@@ -20,24 +24,36 @@ public class Shot {
 	/** Final state of power cell */
 	private final PowerCell cell;
 
+	/** Outcome code, classified once from the final state */
+	private final int outcome;
+
+	/** Was the flight given up early, as hopeless?  If so, the value
+	 * has the right sign, but not its simulated magnitude. */
+	public final boolean givenUp;
+
 	/** Create a new shot */
-	public Shot(double r, double v, double d, PowerCell c) {
+	public Shot(double r, double v, double d, PowerCell c, boolean g) {
 		range = r;
 		velocity = v;
 		duration = d;
 		cell = c;
+		outcome = Outcome.classify(c);
+		givenUp = g;
+	}
+
+	/** Get the outcome code */
+	public int getOutcome() {
+		return outcome;
 	}
 
 	/** Does the shot score an inner goal? */
 	public boolean isInnerGoal() {
-		return cell.past(Port.INNER) &&
-		     !(cell.checkRange() || cell.checkCollision());
+		return outcome == Outcome.INNER_GOAL;
 	}
 
 	/** Does the shot score an outer goal? */
 	public boolean isOuterGoal() {
-		return cell.past(Port.OUTER) &&
-		     !(cell.checkRange() || cell.checkCollision());
+		return Outcome.isOuterGoal(outcome);
 	}
 
 	/** Get the shot value */
@@ -48,26 +64,22 @@ public class Shot {
 	/** Get a string representation */
 	@Override
 	public String toString() {
+		NumberFormat f = DISTANCE.get();
 		StringBuilder sb = new StringBuilder();
 		sb.append("range: ");
-		sb.append(DISTANCE.format(range));
+		sb.append(f.format(range));
 		sb.append("  velocity: ");
-		sb.append(DISTANCE.format(velocity));
+		sb.append(f.format(velocity));
 		sb.append("  duration: ");
-		sb.append(DISTANCE.format(duration));
+		sb.append(f.format(duration));
 		sb.append(" s");
 		sb.append("  dy: ");
-		sb.append(DISTANCE.format(value()));
+		sb.append(f.format(value()));
 		sb.append("  x: ");
-		sb.append(DISTANCE.format(cell.x));
+		sb.append(f.format(cell.x));
 		sb.append("  y: ");
-		sb.append(DISTANCE.format(cell.y));
-		if (isInnerGoal())
-			sb.append("  INNER GOAL!");
-		else if (isOuterGoal())
-			sb.append("  OUTER GOAL!");
-		else
-			sb.append("  MISS!");
+		sb.append(f.format(cell.y));
+		sb.append("  ").append(Outcome.toString(outcome));
 		return sb.toString();
 	}
 }
@@ -1,35 +1,462 @@
+import java.io.Closeable;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
 /** Power cell trajectory simulator */
 public class Simulator {
 
-	/** Simulation interval (s) */
-	static private final double INTERVAL = 0.00001;
+	/** Minimum range to simulate (cm) */
+	static private final int MIN_RANGE_CM = 1;
+
+	/** Maximum range to simulate (cm) */
+	static private final int MAX_RANGE_CM = 1000;
+
+	/** Maximum flight time to simulate (s) */
+	static final double FLIGHT_TIME = 5.0;
+
+	/** X positions where the power cell enters or leaves a zone where
+	 * it overlaps a port plane.  Simulation ends at the last boundary,
+	 * when the power cell has passed the inner port. */
+	static final double[] ZONE_BOUNDARIES = {
+		Port.OUTER.recessedM - PowerCell.RADIUS_M,
+		Port.OUTER.recessedM + PowerCell.RADIUS_M,
+		Port.INNER.recessedM - PowerCell.RADIUS_M,
+		Port.INNER.recessedM,
+	};
+
+	/** Port to check before each zone boundary (null for none) */
+	static final Port[] ZONE_PORTS = {
+		null,
+		Port.OUTER,
+		null,
+		Port.INNER,
+	};
+
+	/** Tolerance for locating zone boundaries (m) */
+	static final double EVENT_TOLERANCE_M = 1e-6;
+
+	/** Maximum iterations for locating a zone boundary */
+	static final int EVENT_ITERATIONS = 8;
+
+	/** Margin beyond an outer port edge for giving up on a shot (m) */
+	static private final double HOPELESS_MARGIN_M = 0.001;
+
+	/** Velocity threshold for searches (m/s) */
+	static private final double THRESHOLD = 0.0001;
+
+	/** Value threshold for optimal shot search (m) */
+	static private final double VALUE_THRESHOLD_M = 1e-6;
+
+	/** Maximum number of shots kept for each range */
+	static private final int HISTORY_SIZE = 256;
+
+	/** Total shots simulated for all ranges */
+	static private final LongAdder SHOTS = new LongAdder();
+
+	/** Total integration steps for all ranges */
+	static private final LongAdder STEPS = new LongAdder();
+
+	/** Total shot history lookups for all ranges */
+	static private final LongAdder LOOKUPS = new LongAdder();
+
+	/** Total shot history hits for all ranges */
+	static private final LongAdder HITS = new LongAdder();
+
+	/** Metrics for all ranges, or null unless collecting metrics.  Set
+	 * before any simulator is created. */
+	static private Metrics METRICS = null;
+
+	/** Get total integration steps for all ranges so far */
+	static long getSteps() {
+		return STEPS.sum();
+	}
+
+	/** Predicted shot value at high and low edges of the inner port,
+	 * where the power cell just touches a corner (m) */
+	static private final double EDGE_M =
+		Port.INNER.heightM / 2.0 - PowerCell.RADIUS_M;
+
+	/** Initial step for probing around a predicted edge (m/s) */
+	static private final double PROBE_STEP = 0.002;
+
+	/** Initial step for warm start brackets (m/s) */
+	static private final double WARM_STEP = 0.01;
+
+	/** Maximum probes for a warm start bracket */
+	static private final int WARM_PROBES = 6;
+
+	/** Initial step for probing around an extrapolated edge (m/s) */
+	static private final double WARM_PROBE_STEP = 0.0005;
+
+	/** Placeholder for environment name in output paths */
+	static private final String ENV_NAME = "{env}";
+
+	/** Number of adjacent ranges in each continuation block (cm) */
+	static private final int BLOCK_CM = 25;
+
+	/** Speeds found for previous ranges, to warm start searches */
+	static private class Continuation {
+
+		/** Optimal velocity for previous range, whether or not it
+		 * scored an inner goal (0 for none) */
+		private double optimal = 0.0;
+
+		/** Optimal velocity for range before previous (0 for none) */
+		private double optimal2 = 0.0;
+
+		/** Speeds for previous range */
+		private Speeds prev = Speeds.NONE;
+
+		/** Speeds for range before previous */
+		private Speeds prev2 = Speeds.NONE;
+
+		/** Predict a velocity by linear extrapolation */
+		static private double predict(double v, double v2) {
+			return (v2 > 0.0) ? 2.0 * v - v2 : v;
+		}
+
+		/** Predict optimal velocity (0 for none) */
+		private double optimal() {
+			return (optimal > 0.0) ? predict(optimal, optimal2) : 0.0;
+		}
+
+		/** Predict highest velocity (0 for none) */
+		private double high() {
+			return prev.isValid() ? predict(prev.high, prev2.high) : 0.0;
+		}
+
+		/** Predict lowest velocity (0 for none) */
+		private double low() {
+			return prev.isValid() ? predict(prev.low, prev2.low) : 0.0;
+		}
+
+		/** Update with results for the next range */
+		private void update(Speeds s, double opt) {
+			prev2 = prev;
+			prev = s;
+			optimal2 = optimal;
+			optimal = opt;
+		}
+	}
 
 	/** Bisector to choose to replace high or low shot */
 	static interface Bisector {
+		/** Choose shot by outcome code and value */
+		boolean choose(int outcome, double value);
+
 		/** Choose shot */
-		boolean choose(Shot shot);
+		default boolean choose(Shot shot) {
+			return choose(shot.getOutcome(), shot.value());
+		}
 	}
 
+	/** Bisector for highest shot */
+	static private final Bisector HIGHEST = (outcome, value) ->
+		!(Outcome.isOuterGoal(outcome) || value < 0);
+
+	/** Bisector for lowest shot */
+	static private final Bisector LOWEST = (outcome, value) ->
+		Outcome.isOuterGoal(outcome) || value > 0;
+
 	/** Power cell launcher */
 	private final Launcher launcher;
 
+	/** Numerical integrator */
+	private final Integrator integrator;
+
+	/** Shots simulated for this range, by velocity, so that no velocity
+	 * is simulated twice.  Searches share these to narrow their
+	 * brackets. */
+	private final TreeMap<Double, Shot> history = new TreeMap<>();
+
+	/** Number of shots simulated for this range */
+	private long shots = 0;
+
+	/** Number of shot history lookups for this range */
+	private long lookups = 0;
+
+	/** Number of shot history lookups which found a usable shot */
+	private long hits = 0;
+
+	/** Optimal velocity found, whether or not it scored (0 for none) */
+	private double optimal = 0.0;
+
+	/** Number of integration steps, including repeated steps to locate
+	 * zone boundaries */
+	private long steps = 0;
+
+	/** Metrics for this range (null unless collecting metrics) */
+	private final Metrics metrics;
+
+	/** Power cell reused by simulateOutcome */
+	private final PowerCell scratch;
+
+	/** Recorder for flight paths (null for none) */
+	private final TrajectoryRecorder recorder;
+
+	/** Was the last flight given up early, as hopeless? */
+	private boolean givenUp;
+
 	/** Create a new power cell launch simulator */
-	private Simulator(double angle, double range) {
-		launcher = new Launcher(angle, range);
+	Simulator(Environment env, double angle, double range,
+		Settings settings)
+	{
+		this(env, angle, range, settings, null);
+	}
+
+	/** Create a new power cell launch simulator, recording the flight
+	 * path of every shot */
+	Simulator(Environment env, double angle, double range,
+		Settings settings, TrajectoryRecorder rec)
+	{
+		launcher = new Launcher(env, angle, range);
+		metrics = (METRICS != null) ? new Metrics() : null;
+		scratch = new PowerCell(env, 0.0, 0.0, 0.0, 0.0);
+		integrator = settings.createIntegrator();
+		recorder = rec;
+	}
+
+	/** Simulate a shot, unless one was already simulated at the same
+	 * velocity */
+	Shot simulate(double v) {
+		return simulate(v, false);
+	}
+
+	/** Simulate a shot which is only checked for its outcome and the
+	 * sign of its value, so it can be given up early if hopeless */
+	private Shot probe(double v) {
+		return simulate(v, true);
+	}
+
+	/** Simulate a shot, unless one was already simulated at the same
+	 * velocity.  A shot which was given up early is simulated again if
+	 * its value is needed. */
+	private Shot simulate(double v, boolean giveUp) {
+		Shot shot = history.get(v);
+		lookups++;
+		if (shot == null || (shot.givenUp && !giveUp)) {
+			long s = steps;
+			shot = fly(v, giveUp);
+			shots++;
+			if (metrics != null)
+				metrics.addShot(steps - s);
+			remember(shot);
+		} else
+			hits++;
+		return shot;
+	}
+
+	/** Add a shot to the history.  When full, the shot farthest from it
+	 * is dropped, since searches narrow toward recent shots. */
+	private void remember(Shot shot) {
+		history.put(shot.velocity, shot);
+		if (history.size() > HISTORY_SIZE) {
+			double below = shot.velocity - history.firstKey();
+			double above = history.lastKey() - shot.velocity;
+			if (below > above)
+				history.pollFirstEntry();
+			else
+				history.pollLastEntry();
+		}
 	}
 
 	/** Simulate motion of power cell.
+	 * Ports are only checked while the power cell overlaps a port plane.
+	 * Crossings into and out of those zones are located within a step,
+	 * so that coarse steps still classify shots exactly.
+	 * @param giveUp Give up early on a hopeless shot.
 	 * @return Shot value. */
-	private Shot simulate(double v) {
+	private Shot fly(double v, boolean giveUp) {
 		PowerCell cell = launcher.launch(v);
-		double dur; // time from launch
-		// Simulate for up to 5 seconds
-		for (dur = 0.0; dur < 5.0; dur += INTERVAL) {
-			cell.advance(INTERVAL);
-			if (cell.checkCollision() || cell.past(Port.INNER))
+		if (recorder != null)
+			recorder.start(v, cell);
+		double dur = fly(cell, 0.0, giveUp);
+		return new Shot(launcher.rangeM, v, dur, cell, givenUp);
+	}
+
+	/** Simulate motion of a launched power cell, leaving it in its
+	 * final state.  The power cell must not yet overlap a port plane.
+	 * @param dur Time already flown from launch (s).
+	 * @param giveUp Give up early on a hopeless shot.
+	 * @return Duration of flight (s). */
+	private double fly(PowerCell cell, double dur, boolean giveUp) {
+		integrator.reset();
+		givenUp = false;
+		int zone = 0; // index of next zone boundary
+		while (dur < FLIGHT_TIME) {
+			double x0 = cell.x;
+			double y0 = cell.y;
+			double vx0 = cell.vx;
+			double vy0 = cell.vy;
+			double dt = integrator.advance(cell, FLIGHT_TIME - dur);
+			steps++;
+			double bx = ZONE_BOUNDARIES[zone];
+			boolean crossed = cell.x >= bx;
+			if (crossed) {
+				dt = locate(cell, x0, y0, vx0, vy0, dt, bx);
+				crossed = cell.x >= bx;
+			}
+			dur += dt;
+			if (recorder != null)
+				recorder.add(dur, cell);
+			Port port = ZONE_PORTS[zone];
+			if (port != null) {
+				double f = port.findCollision(x0, y0, cell.x,
+					cell.y);
+				if (f >= 0.0) {
+					interpolate(cell, x0, y0, vx0, vy0, f);
+					break;
+				}
+			}
+			if (crossed) {
+				zone++;
+				if (zone >= ZONE_BOUNDARIES.length)
+					break; // past inner port
+				port = ZONE_PORTS[zone];
+				if (port != null && port.checkCollision(cell))
+					break;
+			}
+			if (giveUp && zone == 0 && isHopeless(cell)) {
+				givenUp = true;
 				break;
+			}
 		}
-		return new Shot(launcher.rangeM, v, dur, cell);
+		if (recorder != null)
+			recorder.finish(dur, cell);
+		return dur;
+	}
+
+	/** Check if a power cell approaching the outer port can no longer
+	 * pass through it.  Such a shot would hit the wall below or above
+	 * the port, so it can be given up early: it still misses, and its
+	 * value has the same sign as at the wall.  Bounds assume that Magnus
+	 * lift is less than gravity, which is checked.
+	 * @return true if the shot is hopeless. */
+	static boolean isHopeless(PowerCell cell) {
+		double x = cell.x;
+		double y = cell.y;
+		double vx = cell.vx;
+		double vy = cell.vy;
+		double bottom = Port.OUTER.bottom() - HOPELESS_MARGIN_M;
+		double top = Port.OUTER.top() + HOPELESS_MARGIN_M;
+		if (y >= bottom && y <= top)
+			return false;
+		double g = cell.getGravity();
+		double km = cell.getMagnusFactor();
+		double v = Math.sqrt(vx * vx + vy * vy);
+		if (km * v >= g)
+			return false;
+		if (y > top)
+			return isOverTop(cell, x, y, vx, vy, top);
+		// Below the port window, descending, it keeps descending.
+		// Ascending, it is slowed by at least g - km * v.
+		return vy <= 0.0 || y + vy * vy / (2.0 * (g - km * v)) < bottom;
+	}
+
+	/** Check if a power cell above the outer port reaches the wall
+	 * before it can drop back below the top edge.  While above it, speed
+	 * is bounded by energy, so drag is too.
+	 * @return true if the power cell passes over the top. */
+	static private boolean isOverTop(PowerCell cell, double x, double y,
+		double vx, double vy, double top)
+	{
+		double g = cell.getGravity();
+		double vmax = Math.sqrt(vx * vx + vy * vy + 2.0 * g * (y - top));
+		double kd = cell.maxDragFactor(vmax);
+		double up = Math.max(vy, 0.0);
+		// Earliest time to drop back to the top edge
+		double ay = g + kd * up;
+		double t = (vy + Math.sqrt(vy * vy + 2.0 * ay * (y - top))) / ay;
+		// Least distance covered in that time
+		double ax = kd * vmax + cell.getMagnusFactor() * up;
+		double dx = vx * t - 0.5 * ax * t * t;
+		return x + dx >= ZONE_BOUNDARIES[0];
+	}
+
+	/** Simulate a shot with no allocation, bypassing the history.
+	 * The power cell is reused for every shot, so the final value is
+	 * kept until the next call.
+	 * @return Outcome code. */
+	int simulateOutcome(double v) {
+		return simulateOutcome(v, 0.0);
+	}
+
+	/** Simulate a shot with no allocation, as simulateOutcome(v), with
+	 * the launch angle offset by da (radians).
+	 * @return Outcome code. */
+	int simulateOutcome(double v, double da) {
+		launcher.launch(scratch, v, da);
+		if (recorder != null)
+			recorder.start(v, scratch);
+		long s = steps;
+		fly(scratch, 0.0, true);
+		if (metrics != null)
+			metrics.addShot(steps - s);
+		return Outcome.classify(scratch);
+	}
+
+	/** Finish a shot which is already in flight, as simulateOutcome.
+	 * BatchSimulator hands over each shot here before it reaches the
+	 * outer port, leaving the power cell in its final state.
+	 * @param cell Power cell, not yet overlapping a port plane.
+	 * @param dur Time already flown from launch (s).
+	 * @return Outcome code. */
+	int finishOutcome(PowerCell cell, double dur) {
+		long s = steps;
+		fly(cell, dur, true);
+		if (metrics != null)
+			metrics.addShot(steps - s);
+		return Outcome.classify(cell);
+	}
+
+	/** Get the value of the last shot from simulateOutcome (m).  For a
+	 * hopeless shot, given up early, only its sign is exact. */
+	double getValue() {
+		return scratch.y - Port.INNER.elevationM;
+	}
+
+	/** Locate where the power cell reaches an X position within a step.
+	 * The step is repeated from its start, with a time adjusted by
+	 * Newton's method, until the power cell lands just past bx.
+	 * @return Time advanced (s). */
+	private double locate(PowerCell cell, double x0, double y0,
+		double vx0, double vy0, double dt, double bx)
+	{
+		double target = bx + EVENT_TOLERANCE_M / 2.0;
+		// Start from linear interpolation within the step
+		double t = dt * (target - x0) / (cell.x - x0);
+		for (int i = 0; i < EVENT_ITERATIONS; i++) {
+			cell.x = x0;
+			cell.y = y0;
+			cell.vx = vx0;
+			cell.vy = vy0;
+			t = integrator.advance(cell, t);
+			steps++;
+			double err = cell.x - target;
+			if (Math.abs(err) < EVENT_TOLERANCE_M / 2.0)
+				break;
+			t -= err / cell.vx;
+		}
+		return t;
+	}
+
+	/** Move power cell back to a fraction of the last step */
+	private void interpolate(PowerCell cell, double x0, double y0,
+		double vx0, double vy0, double f)
+	{
+		cell.x = x0 + (cell.x - x0) * f;
+		cell.y = y0 + (cell.y - y0) * f;
+		cell.vx = vx0 + (cell.vx - vx0) * f;
+		cell.vy = vy0 + (cell.vy - vy0) * f;
 	}
 
 	/** Get low shot */
@@ -47,86 +474,537 @@ public class Simulator {
 
 	/** Bisect low/high shots until within threshold */
 	private Shot bisectShots(Bisector bisector, Shot lo, Shot hi) {
+		long before = shots;
 		for (int i = 0; i < 32; i++) {
 			double v = (lo.velocity + hi.velocity) / 2.0;
-			Shot shot = simulate(v);
+			Shot shot = probe(v);
 			if (bisector.choose(shot))
 				hi = shot;
 			else
 				lo = shot;
-			if (hi.velocity - lo.velocity < 0.0001)
+			if (hi.velocity - lo.velocity < THRESHOLD) {
+				if (metrics != null)
+					metrics.addBisection(shots - before, i + 1);
 				return shot;
+			}
 		}
+		if (metrics != null)
+			metrics.addBisection(shots - before, 32);
 		return null;
 	}
 
-	/** Bisect between low and high shots */
+	/** Bisect between the narrowest bracket of shots simulated so far */
 	private Shot bisect(Bisector bisector) {
-		Shot lo = lowShot();
-		Shot hi = highShot();
-		if (lo.value() < 0.0 && hi.value() > 0.0)
-			return bisectShots(bisector, lo, hi);
-		else
-			return null;
+		Shot lo = null;
+		Shot hi = null;
+		for (Shot shot : history.values()) {
+			if (bisector.choose(shot)) {
+				hi = shot;
+				break;
+			}
+			lo = shot;
+		}
+		Shot shot = null;
+		if (lo != null && hi != null)
+			shot = bisectShots(bisector, lo, hi);
+		if (shot == null && metrics != null)
+			metrics.addFailed();
+		return shot;
 	}
 
-	/** Find optimal shot for an angle and range */
-	private Shot findOptimalShot() {
-		return bisect(new Bisector() {
-			public boolean choose(Shot shot) {
-				return shot.value() > 0;
+	/** Find optimal shot by Illinois regula falsi on shot value.  Like
+	 * the secant method, this converges superlinearly, but it keeps the
+	 * root bracketed, and halves the value kept on one side whenever
+	 * that side is kept twice in a row. */
+	private Shot findOptimalShot(Shot lo, Shot hi) {
+		double flo = lo.value();
+		double fhi = hi.value();
+		int side = 0;
+		for (int i = 0; i < 32; i++) {
+			double v = (lo.velocity * fhi - hi.velocity * flo) /
+				(fhi - flo);
+			Shot shot = simulate(v);
+			double f = shot.value();
+			if (f > 0) {
+				hi = shot;
+				fhi = f;
+				if (side > 0)
+					flo /= 2.0;
+				side = 1;
+			} else {
+				lo = shot;
+				flo = f;
+				if (side < 0)
+					fhi /= 2.0;
+				side = -1;
+			}
+			if (hi.velocity - lo.velocity < THRESHOLD ||
+			    Math.abs(f) < VALUE_THRESHOLD_M)
+			{
+				if (metrics != null)
+					metrics.iterationsPerSearch.add(i + 1);
+				return shot;
 			}
-		});
+		}
+		if (metrics != null)
+			metrics.iterationsPerSearch.add(32);
+		return null;
 	}
 
-	/** Find highest shot for an angle and range */
-	private Shot findHighestShot() {
-		return bisect(new Bisector() {
-			public boolean choose(Shot shot) {
-				return !(shot.isOuterGoal() ||
-				         shot.value() < 0);
+	/** Estimate slope of shot value near a shot (m per m/s) */
+	private double valueSlope(Shot shot) {
+		Map.Entry<Double, Shot> lo = history.lowerEntry(shot.velocity);
+		Map.Entry<Double, Shot> hi = history.higherEntry(shot.velocity);
+		// Simulating again gives the value of shots given up early
+		Shot a = (lo != null) ? simulate(lo.getKey()) : shot;
+		Shot b = (hi != null) ? simulate(hi.getKey()) : shot;
+		return (b.value() - a.value()) / (b.velocity - a.velocity);
+	}
+
+	/** Find the shot where a bisector changes its choice.  Shots are
+	 * probed outward from a predicted velocity, with doubling steps,
+	 * until the choice changes.  Then bisection starts from the
+	 * narrowest bracket of all shots simulated so far. */
+	private Shot findEdge(Bisector bisector, double guess, double step) {
+		if (Double.isFinite(guess) && guess > 0.0) {
+			Shot probe = probe(guess);
+			boolean chosen = bisector.choose(probe);
+			double dv = chosen ? -step : step;
+			for (int i = 0; i < 8; i++) {
+				probe = probe(probe.velocity + dv);
+				if (bisector.choose(probe) != chosen)
+					break;
+				dv *= 2.0;
 			}
-		});
+		}
+		return bisect(bisector);
 	}
 
-	/** Find lowest shot for an angle and range */
-	private Shot findLowestShot() {
-		return bisect(new Bisector() {
-			public boolean choose(Shot shot) {
-				return shot.isOuterGoal() ||
-				       shot.value() > 0;
+	/** Find a bracket of shots around the optimal velocity, probing
+	 * outward from a starting velocity with doubling steps.
+	 * @return Low and high shots, or null if not found. */
+	private Shot[] findBracket(double v) {
+		Shot shot = simulate(v);
+		boolean above = shot.value() > 0.0;
+		double dv = above ? -WARM_STEP : WARM_STEP;
+		for (int i = 0; i < WARM_PROBES; i++) {
+			Shot next = simulate(shot.velocity + dv);
+			if ((next.value() > 0.0) != above) {
+				return above
+				      ? new Shot[] { next, shot }
+				      : new Shot[] { shot, next };
 			}
-		});
+			shot = next;
+			dv *= 2.0;
+		}
+		return null;
 	}
 
-	/** Find optimal, high and low speeds */
-	private void findSpeedsForRange() {
-		Shot shot = findOptimalShot();
+	/** Find optimal, high and low speeds.
+	 * @param cont Speeds for previous ranges, used to warm start
+	 *             searches when available. */
+	private Speeds findSpeedsForRange(Continuation cont) {
+		double warm = cont.optimal();
+		Shot[] bracket = (warm > 0.0) ? findBracket(warm) : null;
+		Shot lo = (bracket != null) ? bracket[0] : lowShot();
+		Shot hi = (bracket != null) ? bracket[1] : highShot();
+		if (!(lo.value() < 0.0 && hi.value() > 0.0))
+			return Speeds.NONE;
+		Shot shot = findOptimalShot(lo, hi);
+		if (shot != null)
+			optimal = shot.velocity;
 		if (shot != null && shot.isInnerGoal()) {
-			Shot hi = findHighestShot();
-			Shot lo = findLowestShot();
-			Log.log(shot.velocity);
-			Log.log(",");
-			Log.log(hi.velocity);
-			Log.log(",");
-			Log.log(lo.velocity);
-			Log.log();
-		} else {
-			Log.log("0,0,0\n");
+			Shot h = (cont.high() > 0.0)
+			       ? findEdge(HIGHEST, cont.high(), WARM_PROBE_STEP)
+			       : findEdge(HIGHEST, predictEdge(shot, EDGE_M),
+			                  PROBE_STEP);
+			Shot l = (cont.low() > 0.0)
+			       ? findEdge(LOWEST, cont.low(), WARM_PROBE_STEP)
+			       : findEdge(LOWEST, predictEdge(shot, -EDGE_M),
+			                  PROBE_STEP);
+			// Probes from a warm start may not pass an edge, so fall
+			// back to the trial shots, which bracket it
+			if (h == null) {
+				highShot();
+				h = bisect(HIGHEST);
+			}
+			if (l == null) {
+				lowShot();
+				l = bisect(LOWEST);
+			}
+			if (h == null || l == null)
+				return Speeds.NONE;
+			return new Speeds(shot.velocity, h.velocity, l.velocity);
+		} else
+			return Speeds.NONE;
+	}
+
+	/** Predict velocity where shot value reaches an edge value */
+	private double predictEdge(Shot shot, double edge) {
+		return shot.velocity + edge / valueSlope(shot);
+	}
+
+	/** Write all constants which affect speeds found, for hashing */
+	static void hashConstants(DataOutput out) throws IOException {
+		PowerCell.hashConstants(out);
+		Launcher.hashConstants(out);
+		Port.OUTER.hashConstants(out);
+		Port.INNER.hashConstants(out);
+		out.writeDouble(FLIGHT_TIME);
+		out.writeDouble(EVENT_TOLERANCE_M);
+		out.writeInt(EVENT_ITERATIONS);
+		out.writeDouble(HOPELESS_MARGIN_M);
+		out.writeDouble(THRESHOLD);
+		out.writeDouble(VALUE_THRESHOLD_M);
+		out.writeDouble(PROBE_STEP);
+		out.writeDouble(WARM_STEP);
+		out.writeInt(WARM_PROBES);
+		out.writeDouble(WARM_PROBE_STEP);
+	}
+
+	/** Find optimal, high and low speeds for a range (cm) */
+	static private Speeds findSpeeds(Environment env, double angle,
+		int range, Settings settings, Continuation cont)
+	{
+		long start = System.nanoTime();
+		Simulator sim = new Simulator(env, angle, range / 100.0,
+			settings);
+		Speeds speeds = sim.findSpeedsForRange(cont);
+		if (settings.continuation)
+			cont.update(speeds, sim.optimal);
+		SHOTS.add(sim.shots);
+		STEPS.add(sim.steps);
+		LOOKUPS.add(sim.lookups);
+		HITS.add(sim.hits);
+		if (METRICS != null) {
+			METRICS.mergeRange(sim.metrics, angle, range / 100.0,
+				System.nanoTime() - start, sim.shots, sim.steps);
+		}
+		return speeds;
+	}
+
+	/** Find optimal, high and low speeds for a range (m), recording the
+	 * flight path of every shot simulated */
+	static Speeds trace(Environment env, double angle, double range,
+		Settings settings, TrajectoryRecorder rec)
+	{
+		Simulator sim = new Simulator(env, angle, range, settings, rec);
+		return sim.findSpeedsForRange(new Continuation());
+	}
+
+	/** Find speeds for a list of ranges (cm), in order */
+	static Speeds[] findSpeedsForRanges(Environment env, double angle,
+		int[] ranges, Settings settings)
+	{
+		Speeds[] speeds = new Speeds[ranges.length];
+		Continuation cont = new Continuation();
+		for (int i = 0; i < ranges.length; i++) {
+			speeds[i] = findSpeeds(env, angle, ranges[i], settings,
+				cont);
+		}
+		return speeds;
+	}
+
+	/** Find speeds for a block of adjacent ranges (cm).  With
+	 * continuation, each range is warm started from previous ones. */
+	static private Speeds[] findSpeedsForBlock(Environment env,
+		double angle, int first, int last, Settings settings)
+	{
+		Speeds[] speeds = new Speeds[last - first + 1];
+		Continuation cont = new Continuation();
+		for (int range = first; range <= last; range++) {
+			speeds[range - first] = findSpeeds(env, angle, range,
+				settings, cont);
+		}
+		return speeds;
+	}
+
+	/** Output for one environment, or for several environments with the
+	 * same physics, which share all of their simulations */
+	static private class Target implements Closeable {
+
+		/** Environment to simulate */
+		private final Environment env;
+
+		/** Writers, one for each environment with the same physics */
+		private final ArrayList<ResultWriter> writers =
+			new ArrayList<>();
+
+		/** Result cache (null for none) */
+		private final ResultCache cache;
+
+		/** Create a new target.
+		 * @param cacheDir Result cache directory (null for none). */
+		private Target(Environment e, Settings settings, String cacheDir)
+			throws IOException
+		{
+			env = e;
+			cache = (cacheDir != null)
+			      ? new ResultCache(cacheDir, e, settings)
+			      : null;
+		}
+
+		/** Encode rows for each writer */
+		private byte[][] encode(double angle, int first,
+			Speeds[] speeds)
+		{
+			byte[][] rows = new byte[writers.size()][];
+			for (int i = 0; i < rows.length; i++)
+				rows[i] = writers.get(i).encode(angle, first, speeds);
+			return rows;
+		}
+
+		/** Write rows encoded for each writer */
+		private void write(byte[][] rows) throws IOException {
+			for (int i = 0; i < rows.length; i++)
+				writers.get(i).write(rows[i]);
+		}
+
+		/** Close all writers and the cache */
+		@Override
+		public void close() throws IOException {
+			for (ResultWriter w : writers)
+				w.close();
+			if (cache != null)
+				cache.close();
+		}
+	}
+
+	/** Encoded rows for a block of adjacent ranges at one angle */
+	static private class Block {
+
+		/** Target to write */
+		private final Target target;
+
+		/** Rows encoded for each writer of the target */
+		private final byte[][] rows;
+
+		/** Find speeds for a block of ranges (cm), unless cached, and
+		 * encode them in the calling (worker) thread */
+		private Block(Target t, double angle, int first, int last,
+			Settings settings)
+		{
+			target = t;
+			Speeds[] speeds = (t.cache != null)
+			                ? t.cache.get(angle, first, last)
+			                : null;
+			if (speeds == null) {
+				speeds = findSpeedsForBlock(t.env, angle, first,
+					last, settings);
+				if (t.cache != null)
+					putCache(t.cache, angle, first, speeds);
+			}
+			rows = t.encode(angle, first, speeds);
+		}
+
+		/** Add speeds to the result cache */
+		static private void putCache(ResultCache cache, double angle,
+			int first, Speeds[] speeds)
+		{
+			try {
+				cache.put(angle, first, speeds);
+			}
+			catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		/** Write encoded rows */
+		private void write() {
+			try {
+				target.write(rows);
+			}
+			catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
 		}
 	}
 
+	/** Find speeds for blocks of ranges at each target and angle, in
+	 * parallel.  Blocks are ordered by target, angle and then range. */
+	static private Stream<Block> findBlocks(Target[] targets,
+		double[] angles, Settings settings)
+	{
+		int blocks = (MAX_RANGE_CM - MIN_RANGE_CM) / BLOCK_CM + 1;
+		int perTarget = angles.length * blocks;
+		return IntStream.range(0, targets.length * perTarget)
+			.parallel()
+			.mapToObj(t -> {
+				int first = MIN_RANGE_CM + (t % blocks) * BLOCK_CM;
+				int last = Math.min(first + BLOCK_CM - 1,
+					MAX_RANGE_CM);
+				double angle = angles[(t % perTarget) / blocks];
+				return new Block(targets[t / perTarget], angle,
+					first, last, settings);
+			});
+	}
+
 	/** Find optimal speed for all ranges */
-	static private void findSpeedsForAngle(double angle) {
+	static private void findSpeedsForAngle(Target target, double angle,
+		Settings settings) throws IOException
+	{
 		// Test 1 to 1000 cm ranges (0.01 to 10.00 meters)
-		for (int range = 1; range <= 1000; range++) {
-			Simulator sim = new Simulator(angle, range / 100.0);
-			sim.findSpeedsForRange();
+		Continuation cont = new Continuation();
+		for (int range = MIN_RANGE_CM; range <= MAX_RANGE_CM; range++) {
+			Speeds s = findSpeeds(target.env, angle, range, settings,
+				cont);
+			target.write(target.encode(angle, range,
+				new Speeds[] { s }));
+		}
+	}
+
+	/** Find optimal speed for all ranges, one or more angles and one or
+	 * more targets, spread across all cores.  Blocks of adjacent ranges
+	 * are simulated and encoded in parallel on the common fork-join
+	 * pool, but rows are still written in angle and then range order. */
+	static private void findSpeedsParallel(Target[] targets,
+		double[] angles, Settings settings)
+	{
+		findBlocks(targets, angles, settings)
+			.forEachOrdered(Block::write);
+	}
+
+	/** Create targets for a list of environments.  Environments with
+	 * the same physics share one target, with a writer for each.
+	 * @param output Output path, with ENV_NAME replaced by the name of
+	 *               each environment (null for standard output).
+	 * @throws IllegalArgumentException if two environments have the
+	 *         same name, so that they would write the same output. */
+	static private Target[] createTargets(List<Environment> envs,
+		String output, double[] angles, boolean grid, Settings settings,
+		String cacheDir) throws IOException
+	{
+		HashSet<String> names = new HashSet<>();
+		for (Environment env : envs) {
+			if (!names.add(env.name)) {
+				throw new IllegalArgumentException("Duplicate " +
+					"environment: " + env.name);
+			}
+		}
+		ArrayList<Target> targets = new ArrayList<>();
+		try {
+			for (Environment env : envs) {
+				Target target = null;
+				for (Target t : targets) {
+					if (t.env.isSamePhysics(env))
+						target = t;
+				}
+				if (target == null) {
+					target = new Target(env, settings, cacheDir);
+					targets.add(target);
+				}
+				String path = (output != null)
+				            ? output.replace(ENV_NAME, env.name)
+				            : null;
+				target.writers.add(ResultWriter.create(path, env,
+					angles, MAX_RANGE_CM - MIN_RANGE_CM + 1, grid));
+			}
+		}
+		catch (IOException e) {
+			for (Target t : targets)
+				t.close();
+			throw e;
 		}
+		return targets.toArray(new Target[0]);
 	}
 
-	static public void main(String[] args) {
-		double angle = Double.parseDouble(args[0]);
-		findSpeedsForAngle(angle);
+	/** Parse a list of environments, such as
+	 * "minneapolis,duluth temperature=24" */
+	static private List<Environment> parseEnvironments(String list) {
+		ArrayList<Environment> envs = new ArrayList<>();
+		for (String spec : list.split(","))
+			envs.add(Environment.parse(spec));
+		return envs;
+	}
+
+	static public void main(String[] args) throws IOException {
+		double angle = Double.NaN;
+		double[] angles = null;
+		boolean parallel = false;
+		Settings.Scheme scheme = Settings.DEFAULT.scheme;
+		double step = 0.0;
+		double tolerance = Settings.DEFAULT.tolerance;
+		boolean continuation = Settings.DEFAULT.continuation;
+		String metrics = null;
+		String output = null;
+		String cacheDir = null;
+		List<Environment> envs = List.of(Environment.DEFAULT);
+		for (int i = 0; i < args.length; i++) {
+			if (i == 0 && !args[i].startsWith("--"))
+				angle = Double.parseDouble(args[i]);
+			else if (args[i].startsWith("--angles="))
+				angles = Settings.parseAngles(args[i].substring(9));
+			else if ("--parallel".equals(args[i]))
+				parallel = true;
+			else if ("--continuation".equals(args[i]))
+				continuation = true;
+			else if (args[i].startsWith("--scheme="))
+				scheme = Settings.Scheme.parse(args[i].substring(9));
+			else if (args[i].startsWith("--step="))
+				step = Double.parseDouble(args[i].substring(7));
+			else if (args[i].startsWith("--tolerance="))
+				tolerance = Double.parseDouble(
+					args[i].substring(12));
+			else if (args[i].startsWith("--metrics="))
+				metrics = args[i].substring(10);
+			else if (args[i].startsWith("--output="))
+				output = args[i].substring(9);
+			else if (args[i].startsWith("--cache="))
+				cacheDir = args[i].substring(8);
+			else if (args[i].startsWith("--environments="))
+				envs = parseEnvironments(args[i].substring(15));
+			else
+				throw new IllegalArgumentException(args[i]);
+		}
+		if (step <= 0.0)
+			step = scheme.defaultStep;
+		if (metrics != null)
+			METRICS = new Metrics();
+		Settings settings = new Settings(scheme, step, tolerance,
+			continuation);
+		boolean grid = (angles != null);
+		if (!grid && Double.isNaN(angle)) {
+			throw new IllegalArgumentException("An angle or " +
+				"--angles is required");
+		}
+		if (!grid)
+			angles = new double[] { angle };
+		if (envs.size() > 1 && (output == null ||
+		    !output.contains(ENV_NAME)))
+		{
+			throw new IllegalArgumentException("--output must " +
+				"contain " + ENV_NAME + " for more than one " +
+				"environment");
+		}
+		Target[] targets = createTargets(envs, output, angles, grid,
+			settings, cacheDir);
+		try {
+			// With a cache or more than one target, always run in
+			// blocks, which are cached whole
+			if (grid || parallel || cacheDir != null ||
+			    targets.length > 1)
+				findSpeedsParallel(targets, angles, settings);
+			else
+				findSpeedsForAngle(targets[0], angle, settings);
+		}
+		finally {
+			for (Target t : targets)
+				t.close();
+		}
+		if (cacheDir != null) {
+			long hits = 0;
+			long misses = 0;
+			for (Target t : targets) {
+				hits += t.cache.getHits();
+				misses += t.cache.getMisses();
+			}
+			System.err.println("Result cache: " + hits +
+				" blocks reused, " + misses + " blocks found");
+		}
+		System.err.println("Shots: " + SHOTS.sum() + " (history hits: " +
+			HITS.sum() + " of " + LOOKUPS.sum() + " lookups)");
+		System.err.println("Integration steps: " + STEPS.sum());
+		if (metrics != null)
+			METRICS.write(metrics);
 	}
 }
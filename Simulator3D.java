@@ -0,0 +1,479 @@
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.stream.IntStream;
+
+/** Power cell trajectory simulator in three dimensions.
+ *
+ * The launcher stands at a horizontal distance from the center of the
+ * outer port, off the axis of the ports by a yaw offset, and is turned to
+ * aim at the center of the inner port.  Seen from off axis, the outer
+ * hexagon is narrower, and the inner port is partly hidden behind it.
+ *
+ * The power cell is launched with backspin about a horizontal axis, square
+ * to its path.  A spin tilt turns that axis about the launch direction,
+ * adding sidespin, which curves the shot sideways.  With no yaw offset or
+ * tilt, the flight path is the same as in Simulator with the same settings.
+ *
+ * Flight is integrated by the scheme chosen in Settings, through the same
+ * Integrator as Simulator.  Ports are only checked while the power cell
+ * overlaps a port plane.  As in Simulator, the step which enters or leaves
+ * one of those zones is repeated from its start, with a time found by
+ * Newton's method, so that the power cell lands within EVENT_TOLERANCE_M
+ * of the boundary.  Inside a zone, the straight path of each step is
+ * checked at fine intervals, using Port3D broad-phase tests first, and a
+ * collision is then located by bisection.
+ *
+ * Usage: Simulator3D [angle] [options]
+ *
+ *   --ranges=MIN:MAX:STEP     Distances (cm), default 100:1000:10
+ *   --yaws=MIN:MAX:STEP       Yaw offsets (degrees), default 0:60:10
+ *   --spin-tilt=DEG           Spin axis tilt (degrees), default 0
+ *   --scheme=SCHEME           Integration scheme, as Simulator
+ *   --step=STEP               Integration step (s), default for scheme
+ *   --tolerance=TOL           Error tolerance for dormand-prince
+ *   --environment="ENV"       Environment, as Environment.parse
+ *   --output=FILE             Output file, default standard output
+ *
+ * Output is CSV, with one row of optimal, high and low velocity for each
+ * yaw offset and distance, by yaw. */
+public class Simulator3D {
+
+	/** Maximum flight time to simulate (s) */
+	static private final double FLIGHT_TIME = Simulator.FLIGHT_TIME;
+
+	/** Largest interval for checking a path through a port (m) */
+	static private final double SWEEP_M = 0.001;
+
+	/** Tolerance for locating zone boundaries and collisions (m) */
+	static private final double EVENT_TOLERANCE_M =
+		Simulator.EVENT_TOLERANCE_M;
+
+	/** Maximum iterations for locating a zone boundary */
+	static private final int EVENT_ITERATIONS = Simulator.EVENT_ITERATIONS;
+
+	/** Velocity threshold for searches (m/s) */
+	static private final double THRESHOLD = 0.0001;
+
+	/** Value threshold for optimal shot search (m) */
+	static private final double VALUE_THRESHOLD_M = 1e-6;
+
+	/** Initial step for bracketing the optimal velocity (m/s) */
+	static private final double BRACKET_STEP = 0.05;
+
+	/** Initial step for probing past an edge (m/s) */
+	static private final double PROBE_STEP = 0.01;
+
+	/** Most probes for a bracket or edge */
+	static private final int PROBES = 12;
+
+	/** Most iterations for a search */
+	static private final int ITERATIONS = 64;
+
+	/** X positions where the power cell enters or leaves a zone where
+	 * it overlaps a port plane, as Simulator.ZONE_BOUNDARIES.  Flight
+	 * ends at the last boundary, when the power cell has passed the
+	 * inner port. */
+	static private final double[] ZONE_BOUNDARIES = {
+		Port3D.OUTER.recessedM - PowerCell.RADIUS_M,
+		Port3D.OUTER.recessedM + PowerCell.RADIUS_M,
+		Port3D.INNER.recessedM - PowerCell.RADIUS_M,
+		Port3D.INNER.recessedM,
+	};
+
+	/** Port to check before each zone boundary (null for none) */
+	static private final Port3D[] ZONE_PORTS = {
+		null,
+		Port3D.OUTER,
+		null,
+		Port3D.INNER,
+	};
+
+	/** Header for output */
+	static private final String HEADER = "yaw,range,optimal,high,low";
+
+	/** Launch position, X (m) */
+	private final double launchX;
+
+	/** Launch position, Z (m) */
+	private final double launchZ;
+
+	/** Launch elevation (m) */
+	private final double launchY;
+
+	/** Launch angle (radians) */
+	private final double angle;
+
+	/** Horizontal launch direction, X component */
+	private final double headX;
+
+	/** Horizontal launch direction, Z component */
+	private final double headZ;
+
+	/** Spin axis tilt (radians) */
+	private final double tilt;
+
+	/** Numerical integrator */
+	private final Integrator integrator;
+
+	/** Power cell, reused for every shot */
+	private final PowerCell3D cell;
+
+	/** Value of the last shot: elevation from inner port center where
+	 * it ended (m) */
+	private double value;
+
+	/** Create a simulator.
+	 * @param env Environment.
+	 * @param a Launch angle (degrees).
+	 * @param range Distance to outer port center (m).
+	 * @param yaw Yaw offset from the port axis (degrees).
+	 * @param t Spin axis tilt (degrees).
+	 * @param settings Simulation settings. */
+	public Simulator3D(Environment env, double a, double range, double yaw,
+		double t, Settings settings)
+	{
+		Launcher launcher = new Launcher(env, a, range);
+		double y = Math.toRadians(yaw);
+		launchX = Port3D.OUTER.recessedM - range * Math.cos(y);
+		launchZ = range * Math.sin(y);
+		launchY = launcher.elevationM;
+		angle = launcher.angle;
+		// Aim at the center of the inner port
+		double dx = Port3D.INNER.recessedM - launchX;
+		double dz = -launchZ;
+		double d = Math.hypot(dx, dz);
+		headX = dx / d;
+		headZ = dz / d;
+		tilt = Math.toRadians(t);
+		integrator = settings.createIntegrator();
+		cell = new PowerCell3D(env);
+	}
+
+	/** Launch the power cell with a velocity */
+	private void launch(double v) {
+		double c = Math.cos(angle);
+		double s = Math.sin(angle);
+		// Unit launch direction
+		double ux = c * headX;
+		double uy = s;
+		double uz = c * headZ;
+		// Backspin axis: horizontal, square to the launch direction
+		double bx = -headZ;
+		double bz = headX;
+		// Tilt the axis about the launch direction (u x b)
+		double ct = Math.cos(tilt);
+		double st = Math.sin(tilt);
+		double sx = bx * ct + (uy * bz) * st;
+		double sy = (uz * bx - ux * bz) * st;
+		double sz = bz * ct + (-uy * bx) * st;
+		cell.reset(launchX, launchY, launchZ, v * ux, v * uy, v * uz, sx,
+			sy, sz);
+	}
+
+	/** Simulate a shot, with no allocation.  The value is kept until
+	 * the next shot.
+	 * @return Outcome code. */
+	public int simulate(double v) {
+		launch(v);
+		int outcome = fly();
+		value = cell.y - Port3D.INNER.elevationM;
+		return outcome;
+	}
+
+	/** Get the value of the last shot (m) */
+	public double getValue() {
+		return value;
+	}
+
+	/** Fly the power cell until it collides with a port, passes the
+	 * inner port, or flight time runs out.
+	 * @return Outcome code. */
+	private int fly() {
+		integrator.reset();
+		int zone = 0; // index of next zone boundary
+		double dur = 0.0;
+		while (dur < FLIGHT_TIME) {
+			double x0 = cell.x;
+			double y0 = cell.y;
+			double z0 = cell.z;
+			double vx0 = cell.vx;
+			double vy0 = cell.vy;
+			double vz0 = cell.vz;
+			double dt = integrator.advance(cell, FLIGHT_TIME - dur);
+			double bx = ZONE_BOUNDARIES[zone];
+			boolean crossed = cell.x >= bx;
+			if (crossed) {
+				dt = locate(x0, y0, z0, vx0, vy0, vz0, dt, bx);
+				crossed = cell.x >= bx;
+			}
+			dur += dt;
+			Port3D port = ZONE_PORTS[zone];
+			if (port != null &&
+			    sweep(port, x0, y0, z0, vx0, vy0, vz0))
+				return collide(port);
+			if (crossed) {
+				zone++;
+				if (zone >= ZONE_BOUNDARIES.length)
+					return Outcome.INNER_GOAL;
+				port = ZONE_PORTS[zone];
+				if (port != null &&
+				    port.checkCollision(cell.x, cell.y, cell.z))
+					return collide(port);
+			}
+		}
+		return Outcome.MISS;
+	}
+
+	/** Get the outcome of colliding with a port */
+	private int collide(Port3D port) {
+		return (port == Port3D.INNER && cell.x > Port3D.OUTER.recessedM)
+		      ? Outcome.OUTER_GOAL
+		      : Outcome.MISS;
+	}
+
+	/** Repeat the last step from its start, so that the power cell just
+	 * crosses a zone boundary, as Simulator.locate does.
+	 * @param dt Duration of the last step (s).
+	 * @param bx X position of the boundary (m).
+	 * @return Duration of the repeated step (s). */
+	private double locate(double x0, double y0, double z0, double vx0,
+		double vy0, double vz0, double dt, double bx)
+	{
+		double target = bx + EVENT_TOLERANCE_M / 2.0;
+		// Start from linear interpolation within the step
+		double t = dt * (target - x0) / (cell.x - x0);
+		for (int i = 0; i < EVENT_ITERATIONS; i++) {
+			cell.x = x0;
+			cell.y = y0;
+			cell.z = z0;
+			cell.vx = vx0;
+			cell.vy = vy0;
+			cell.vz = vz0;
+			t = integrator.advance(cell, t);
+			double err = cell.x - target;
+			if (Math.abs(err) < EVENT_TOLERANCE_M / 2.0)
+				break;
+			t -= err / cell.vx;
+		}
+		return t;
+	}
+
+	/** Check the straight path of the last step, within one zone, for a
+	 * collision with a port.  The start of the path has already been
+	 * checked.  On a collision, the power cell is moved back to where
+	 * it was located along the path.
+	 * @return true on a collision. */
+	private boolean sweep(Port3D port, double x0, double y0, double z0,
+		double vx0, double vy0, double vz0)
+	{
+		double dx = cell.x - x0;
+		double dy = cell.y - y0;
+		double dz = cell.z - z0;
+		double len = Math.sqrt(dx * dx + dy * dy + dz * dz);
+		int n = Math.max(1, (int) Math.ceil(len / SWEEP_M));
+		for (int i = 1; i <= n; i++) {
+			double f = (double) i / n;
+			if (port.checkCollision(x0 + dx * f, y0 + dy * f,
+			    z0 + dz * f))
+			{
+				// Bisect between the last clear point and this one
+				double lo = (double) (i - 1) / n;
+				double hi = f;
+				while ((hi - lo) * len > EVENT_TOLERANCE_M) {
+					double m = (lo + hi) / 2.0;
+					if (port.checkCollision(x0 + dx * m,
+					    y0 + dy * m, z0 + dz * m))
+						hi = m;
+					else
+						lo = m;
+				}
+				cell.x = x0 + dx * hi;
+				cell.y = y0 + dy * hi;
+				cell.z = z0 + dz * hi;
+				cell.vx = vx0 + (cell.vx - vx0) * hi;
+				cell.vy = vy0 + (cell.vy - vy0) * hi;
+				cell.vz = vz0 + (cell.vz - vz0) * hi;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/** Estimate velocity for a drag-free path through the inner port
+	 * center (0 if it cannot be reached at the launch angle) */
+	private double estimateVelocity() {
+		double d = Math.hypot(Port3D.INNER.recessedM - launchX, launchZ);
+		double h = Port3D.INNER.elevationM - launchY;
+		double c = Math.cos(angle);
+		double a2 = 2.0 * c * c * (d * Math.tan(angle) - h);
+		return (a2 > 0.0)
+		      ? Math.sqrt(cell.getGravity() * d * d / a2)
+		      : 0.0;
+	}
+
+	/** Find the optimal velocity, where the value is zero, by Illinois
+	 * regula falsi within a bracket.
+	 * @return Optimal velocity, or 0 if not found. */
+	private double findOptimal() {
+		double v = estimateVelocity();
+		if (!(v > 0.0))
+			return 0.0;
+		simulate(v);
+		double fv = value;
+		boolean above = fv > 0.0;
+		double dv = above ? -BRACKET_STEP : BRACKET_STEP;
+		double u = v;
+		double fu = fv;
+		int i = 0;
+		while ((fu > 0.0) == above) {
+			if (++i > PROBES)
+				return 0.0;
+			v = u;
+			fv = fu;
+			u = v + dv;
+			simulate(u);
+			fu = value;
+			dv *= 2.0;
+		}
+		double lo = above ? u : v;
+		double flo = above ? fu : fv;
+		double hi = above ? v : u;
+		double fhi = above ? fv : fu;
+		int side = 0;
+		for (i = 0; i < ITERATIONS; i++) {
+			double m = (lo * fhi - hi * flo) / (fhi - flo);
+			simulate(m);
+			double f = value;
+			if (f > 0.0) {
+				hi = m;
+				fhi = f;
+				if (side > 0)
+					flo /= 2.0;
+				side = 1;
+			} else {
+				lo = m;
+				flo = f;
+				if (side < 0)
+					fhi /= 2.0;
+				side = -1;
+			}
+			if (hi - lo < THRESHOLD || Math.abs(f) < VALUE_THRESHOLD_M)
+				return m;
+		}
+		return 0.0;
+	}
+
+	/** Find the edge of inner goals, probing outward from an inner goal
+	 * velocity, then bisecting.
+	 * @param v Velocity scoring an inner goal (m/s).
+	 * @param dir Direction to probe: 1 for higher, -1 for lower.
+	 * @return Last velocity scoring an inner goal, within THRESHOLD. */
+	private double findEdge(double v, double dir) {
+		double in = v;
+		double out = v;
+		double dv = PROBE_STEP * dir;
+		for (int i = 0; i < PROBES; i++) {
+			out = in + dv;
+			if (simulate(out) != Outcome.INNER_GOAL)
+				break;
+			in = out;
+			dv *= 2.0;
+		}
+		while (Math.abs(out - in) >= THRESHOLD) {
+			double m = (in + out) / 2.0;
+			if (simulate(m) == Outcome.INNER_GOAL)
+				in = m;
+			else
+				out = m;
+		}
+		return in;
+	}
+
+	/** Find optimal, high and low speeds */
+	public Speeds findSpeeds() {
+		double opt = findOptimal();
+		if (opt > 0.0 && simulate(opt) == Outcome.INNER_GOAL)
+			return new Speeds(opt, findEdge(opt, 1.0),
+				findEdge(opt, -1.0));
+		else
+			return Speeds.NONE;
+	}
+
+	/** Format one row of output */
+	static private String format(double yaw, int range, Speeds s) {
+		return s.isValid()
+		      ? String.format(Locale.ROOT, "%.3f,%.3f,%.3f,%.3f,%.3f",
+		                      yaw, range / 100.0, s.optimal, s.high,
+		                      s.low)
+		      : String.format(Locale.ROOT, "%.3f,%.3f,0,0,0", yaw,
+		                      range / 100.0);
+	}
+
+	/** Find speeds for every yaw offset and distance, and write them as
+	 * CSV */
+	static public void main(String[] args) throws IOException {
+		double angle = 45.0;
+		int[] ranges = Settings.parseRanges("100:1000:10");
+		double[] yaws = Settings.parseAngles("0:60:10");
+		double tilt = 0.0;
+		Settings.Scheme scheme = Settings.DEFAULT.scheme;
+		double step = 0.0;
+		double tolerance = Settings.DEFAULT.tolerance;
+		Environment env = Environment.DEFAULT;
+		String output = null;
+		for (int i = 0; i < args.length; i++) {
+			if (i == 0 && !args[i].startsWith("--"))
+				angle = Double.parseDouble(args[i]);
+			else if (args[i].startsWith("--ranges="))
+				ranges = Settings.parseRanges(args[i].substring(9));
+			else if (args[i].startsWith("--yaws="))
+				yaws = Settings.parseAngles(args[i].substring(7));
+			else if (args[i].startsWith("--spin-tilt="))
+				tilt = Double.parseDouble(args[i].substring(12));
+			else if (args[i].startsWith("--scheme="))
+				scheme = Settings.Scheme.parse(args[i].substring(9));
+			else if (args[i].startsWith("--step="))
+				step = Double.parseDouble(args[i].substring(7));
+			else if (args[i].startsWith("--tolerance="))
+				tolerance = Double.parseDouble(
+					args[i].substring(12));
+			else if (args[i].startsWith("--environment="))
+				env = Environment.parse(args[i].substring(14));
+			else if (args[i].startsWith("--output="))
+				output = args[i].substring(9);
+			else
+				throw new IllegalArgumentException(args[i]);
+		}
+		if (step <= 0.0)
+			step = scheme.defaultStep;
+		final double a = angle;
+		final double t = tilt;
+		final Settings s = new Settings(scheme, step, tolerance, false);
+		final Environment e = env;
+		final int[] r = ranges;
+		final double[] y = yaws;
+		Writer w = (output != null)
+		         ? new FileWriter(output)
+		         : new OutputStreamWriter(System.out);
+		PrintWriter out = new PrintWriter(w);
+		out.println(HEADER);
+		IntStream.range(0, y.length * r.length)
+			.parallel()
+			.mapToObj(i -> {
+				double yaw = y[i / r.length];
+				int range = r[i % r.length];
+				Simulator3D sim = new Simulator3D(e, a,
+					range / 100.0, yaw, t, s);
+				return format(yaw, range, sim.findSpeeds());
+			})
+			.forEachOrdered(out::println);
+		if (output != null)
+			out.close();
+		else
+			out.flush();
+	}
+}
@@ -0,0 +1,27 @@
+/** Optimal, high and low launch speeds for one range */
+public class Speeds {
+
+	/** Speeds for a range with no inner goal */
+	static public final Speeds NONE = new Speeds(0.0, 0.0, 0.0);
+
+	/** Optimal velocity (m/s) */
+	public final double optimal;
+
+	/** Highest velocity for an inner goal (m/s) */
+	public final double high;
+
+	/** Lowest velocity for an inner goal (m/s) */
+	public final double low;
+
+	/** Create new speeds */
+	public Speeds(double o, double h, double l) {
+		optimal = o;
+		high = h;
+		low = l;
+	}
+
+	/** Check if an inner goal is possible */
+	public boolean isValid() {
+		return optimal > 0.0;
+	}
+}
@@ -0,0 +1,846 @@
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.SplittableRandom;
+
+/** Compact surrogate model, fitted to a binary range velocity table.
+ *
+ * Angles are split into segments of a few adjacent table angles, and each
+ * segment is split into pieces over range.  Within a piece, each velocity
+ * column is a tensor product of Chebyshev polynomials in range and angle,
+ * fitted by least squares to the table entries.  A piece is split in half
+ * while any entry is off by more than the tolerance, so pieces are short
+ * only where velocity changes sharply, such as where the port edge which
+ * limits a shot changes.
+ *
+ * Each run of ranges with a shot at every angle of a segment is fitted as
+ * pieces of its own, and ranges in the gaps between runs have no shot.  A
+ * run shorter than the range degree is fitted with a lower degree, and an
+ * isolated range with a shot is left out, since no piece can span it.  The
+ * maximum error is certified by evaluating every table entry covered, with
+ * the same arithmetic as the generated class, and against the simulator at
+ * the middle of every table cell covered.  Between table angles, it is also
+ * spot checked against the simulator at random.  All maxima and the share
+ * of table entries with a shot covered are written to the generated class.
+ *
+ * Usage: Surrogate [bin] [options]
+ *
+ *   --class=NAME              Evaluator class, default VelocitySurrogate
+ *   --tolerance=TOL           Error tolerance (m/s), default 0.001
+ *   --degree=N                Chebyshev degree in range, default 6
+ *   --angle-degree=N          Chebyshev degree in angle, default 2
+ *   --verify=N                Simulator spot checks, default 100
+ *   --seed=SEED               Random seed for spot checks, default 1
+ *   --settings="SETTINGS"     Simulation settings, as Settings.parse
+ *
+ * The evaluator is written to NAME.java, as a class with no dependencies.
+ * Its evaluate method does no allocation, and returns the same status
+ * codes as VelocityLookup. */
+public class Surrogate {
+
+	/** Number of velocity columns (optimal, high, low) */
+	static private final int COLUMNS = 3;
+
+	/** Names of velocity columns */
+	static private final String[] COLUMN_NAMES = {
+		"optimal", "high", "low",
+	};
+
+	/** Default error tolerance (m/s) */
+	static private final double TOLERANCE = 0.001;
+
+	/** Default Chebyshev degree in range */
+	static private final int RANGE_DEGREE = 6;
+
+	/** Default Chebyshev degree in angle */
+	static private final int ANGLE_DEGREE = 2;
+
+	/** Default number of simulator spot checks */
+	static private final int VERIFY = 100;
+
+	/** Tolerance for matching the angle of a single angle table */
+	static private final double ANGLE_TOLERANCE = 1e-6;
+
+	/** Evaluation succeeded */
+	static private final int OK = VelocityLookup.OK;
+
+	/** No shot at the range, in a gap between runs */
+	static private final int NO_SHOT = VelocityLookup.NO_SHOT;
+
+	/** Coefficients per line of generated source */
+	static private final int PER_LINE = 3;
+
+	/** Table being fitted */
+	private final TableFile table;
+
+	/** Velocities [angle][range * 3] */
+	private final double[][] velocity;
+
+	/** Error tolerance (m/s) */
+	private final double tolerance;
+
+	/** Chebyshev degree in range */
+	private final int rangeDegree;
+
+	/** Chebyshev degree in angle (also angle steps per segment) */
+	private final int angleDegree;
+
+	/** Coefficients for each column of a piece */
+	private final int terms;
+
+	/** Number of angle segments */
+	private final int segments;
+
+	/** First piece of each segment, with one more for the end */
+	private final int[] segmentPiece;
+
+	/** Lowest range of each piece (m) */
+	private double[] pieceLow;
+
+	/** Highest range of each piece (m) */
+	private double[] pieceHigh;
+
+	/** Coefficients [piece][column][range degree][angle degree] */
+	private double[] coeffs;
+
+	/** Create a surrogate for a table (not fitted yet) */
+	private Surrogate(TableFile t, double tol, int n, int m) {
+		table = t;
+		velocity = new double[t.angles][t.ranges * COLUMNS];
+		for (int a = 0; a < t.angles; a++)
+			t.getVelocities(a).get(velocity[a]);
+		tolerance = tol;
+		rangeDegree = n;
+		angleDegree = Math.min(m, t.angles - 1);
+		terms = (n + 1) * (angleDegree + 1);
+		segments = (angleDegree > 0)
+		         ? (t.angles - 2) / angleDegree + 1
+		         : 1;
+		segmentPiece = new int[segments + 1];
+	}
+
+	/** Get the first table angle of a segment */
+	private int segmentAngle(int s) {
+		return Math.min(s * angleDegree,
+			table.angles - 1 - angleDegree);
+	}
+
+	/** Get the range of a table entry (m) */
+	private double getRange(int r) {
+		return table.firstRange + r * table.rangeStep;
+	}
+
+	/** Find every run of two or more ranges with a shot at every angle
+	 * of a segment.
+	 * @return First and last range index of each run. */
+	private ArrayList<int[]> findRuns(int s) throws IOException {
+		int a0 = segmentAngle(s);
+		ArrayList<int[]> runs = new ArrayList<>();
+		int start = 0;
+		for (int r = 0; r <= table.ranges; r++) {
+			boolean shot = r < table.ranges;
+			for (int a = a0; shot && a <= a0 + angleDegree; a++)
+				shot = velocity[a][r * COLUMNS] > 0.0;
+			if (!shot) {
+				if (r - start >= 2)
+					runs.add(new int[] { start, r - 1 });
+				start = r + 1;
+			}
+		}
+		if (runs.isEmpty()) {
+			throw new IOException("No run of ranges with a shot for " +
+				"angles " + table.getAngle(a0) + " to " +
+				table.getAngle(a0 + angleDegree));
+		}
+		return runs;
+	}
+
+	/** Fit all segments */
+	private void fit() throws IOException {
+		ArrayList<int[]> pieces = new ArrayList<>();
+		ArrayList<double[]> fits = new ArrayList<>();
+		for (int s = 0; s < segments; s++) {
+			segmentPiece[s] = pieces.size();
+			for (int[] run : findRuns(s))
+				fitPiece(s, run[0], run[1], pieces, fits);
+		}
+		segmentPiece[segments] = pieces.size();
+		pieceLow = new double[pieces.size()];
+		pieceHigh = new double[pieces.size()];
+		coeffs = new double[pieces.size() * COLUMNS * terms];
+		for (int p = 0; p < pieces.size(); p++) {
+			pieceLow[p] = getRange(pieces.get(p)[0]);
+			pieceHigh[p] = getRange(pieces.get(p)[1]);
+			System.arraycopy(fits.get(p), 0, coeffs,
+				p * COLUMNS * terms, COLUMNS * terms);
+		}
+	}
+
+	/** Fit one piece of a segment, splitting it while the error is above
+	 * tolerance.  A piece is split at its worst entry, which is usually
+	 * near a sharp change, so that few short pieces are needed there.
+	 * Adjacent pieces share their end ranges.
+	 * @param first First range index.
+	 * @param last Last range index. */
+	private void fitPiece(int s, int first, int last,
+		ArrayList<int[]> pieces, ArrayList<double[]> fits)
+	{
+		double[] c = fitCoefficients(s, first, last);
+		int worst = findWorst(s, first, last, c);
+		if (worst >= 0 && last - first >= 2 * rangeDegree) {
+			// Each part needs enough ranges for its fit
+			int mid = Math.max(first + rangeDegree,
+				Math.min(worst, last - rangeDegree));
+			fitPiece(s, first, mid, pieces, fits);
+			fitPiece(s, mid, last, pieces, fits);
+		} else {
+			pieces.add(new int[] { first, last });
+			fits.add(c);
+		}
+	}
+
+	/** Get normalized range within a piece, from -1 to 1 */
+	static private double normalize(double range, double lo, double hi) {
+		return (2.0 * range - lo - hi) / (hi - lo);
+	}
+
+	/** Get normalized angle within a segment, from -1 to 1 */
+	private double normalizeAngle(int a, int a0) {
+		return (angleDegree > 0)
+		      ? 2.0 * (a - a0) / angleDegree - 1.0
+		      : 0.0;
+	}
+
+	/** Calculate Chebyshev polynomials T0 to Tn at x */
+	static private void chebyshev(double x, double[] t) {
+		t[0] = 1.0;
+		if (t.length > 1)
+			t[1] = x;
+		for (int i = 2; i < t.length; i++)
+			t[i] = 2.0 * x * t[i - 1] - t[i - 2];
+	}
+
+	/** Fit coefficients for one piece, by least squares.  A piece with
+	 * too few ranges for the range degree is fitted with a lower degree,
+	 * leaving the higher coefficients zero.
+	 * @return Coefficients [column][range degree][angle degree]. */
+	private double[] fitCoefficients(int s, int first, int last) {
+		int a0 = segmentAngle(s);
+		double lo = getRange(first);
+		double hi = getRange(last);
+		int n = Math.min(rangeDegree, last - first);
+		// Terms are ordered by range degree, so the first ones are used
+		int used = (n + 1) * (angleDegree + 1);
+		double[] tx = new double[n + 1];
+		double[] ty = new double[angleDegree + 1];
+		double[] basis = new double[used];
+		double[][] ata = new double[used][used];
+		double[][] atb = new double[COLUMNS][used];
+		for (int a = a0; a <= a0 + angleDegree; a++) {
+			chebyshev(normalizeAngle(a, a0), ty);
+			for (int r = first; r <= last; r++) {
+				chebyshev(normalize(getRange(r), lo, hi), tx);
+				for (int i = 0; i <= n; i++) {
+					for (int j = 0; j <= angleDegree; j++) {
+						basis[i * (angleDegree + 1) + j] =
+							tx[i] * ty[j];
+					}
+				}
+				for (int i = 0; i < used; i++) {
+					for (int j = 0; j <= i; j++)
+						ata[i][j] += basis[i] * basis[j];
+					for (int c = 0; c < COLUMNS; c++) {
+						atb[c][i] += basis[i] *
+							velocity[a][r * COLUMNS + c];
+					}
+				}
+			}
+		}
+		choleskyDecompose(ata);
+		double[] coef = new double[COLUMNS * terms];
+		for (int c = 0; c < COLUMNS; c++) {
+			choleskySolve(ata, atb[c]);
+			System.arraycopy(atb[c], 0, coef, c * terms, used);
+		}
+		return coef;
+	}
+
+	/** Decompose a symmetric positive definite matrix (lower triangle)
+	 * in place, as L * L^T */
+	static private void choleskyDecompose(double[][] m) {
+		for (int j = 0; j < m.length; j++) {
+			double d = m[j][j];
+			for (int k = 0; k < j; k++)
+				d -= m[j][k] * m[j][k];
+			m[j][j] = Math.sqrt(d);
+			for (int i = j + 1; i < m.length; i++) {
+				double v = m[i][j];
+				for (int k = 0; k < j; k++)
+					v -= m[i][k] * m[j][k];
+				m[i][j] = v / m[j][j];
+			}
+		}
+	}
+
+	/** Solve L * L^T * x = b in place */
+	static private void choleskySolve(double[][] l, double[] b) {
+		for (int i = 0; i < b.length; i++) {
+			for (int k = 0; k < i; k++)
+				b[i] -= l[i][k] * b[k];
+			b[i] /= l[i][i];
+		}
+		for (int i = b.length - 1; i >= 0; i--) {
+			for (int k = i + 1; k < b.length; k++)
+				b[i] -= l[k][i] * b[k];
+			b[i] /= l[i][i];
+		}
+	}
+
+	/** Find the range index with the largest error in a fitted piece.
+	 * @return Range index, or -1 if no error is above tolerance. */
+	private int findWorst(int s, int first, int last, double[] c) {
+		int a0 = segmentAngle(s);
+		double lo = getRange(first);
+		double hi = getRange(last);
+		double err = tolerance;
+		int worst = -1;
+		for (int a = a0; a <= a0 + angleDegree; a++) {
+			double y = normalizeAngle(a, a0);
+			for (int r = first; r <= last; r++) {
+				double x = normalize(getRange(r), lo, hi);
+				for (int col = 0; col < COLUMNS; col++) {
+					double v = clenshaw(c, col * terms,
+						rangeDegree, angleDegree, x, y);
+					double e = Math.abs(v -
+						velocity[a][r * COLUMNS + col]);
+					if (e > err) {
+						err = e;
+						worst = r;
+					}
+				}
+			}
+		}
+		return worst;
+	}
+
+	/** Sum a Chebyshev series in range and angle, by Clenshaw's
+	 * recurrence.  This must match the generated class exactly. */
+	static private double clenshaw(double[] c, int k, int n, int m,
+		double x, double y)
+	{
+		double b1 = 0.0;
+		double b2 = 0.0;
+		for (int i = n; i >= 0; i--) {
+			double a = clenshaw(c, k + i * (m + 1), m, y);
+			double b0 = a + 2.0 * x * b1 - b2;
+			b2 = b1;
+			b1 = b0;
+		}
+		return b1 - x * b2;
+	}
+
+	/** Sum a Chebyshev series in angle, by Clenshaw's recurrence */
+	static private double clenshaw(double[] c, int k, int m, double y) {
+		double b1 = 0.0;
+		double b2 = 0.0;
+		for (int j = m; j >= 0; j--) {
+			double b0 = c[k + j] + 2.0 * y * b1 - b2;
+			b2 = b1;
+			b1 = b0;
+		}
+		return b1 - y * b2;
+	}
+
+	/** Evaluate the surrogate, as the generated class does.
+	 * @return Status, as VelocityLookup. */
+	private int evaluate(double angle, double range, double[] out) {
+		int s = 0;
+		double y = 0.0;
+		if (table.angles > 1) {
+			double fa = (angle - table.firstAngle) / table.angleStep;
+			if (!(fa >= 0.0))
+				return VelocityLookup.ANGLE_LOW;
+			if (!(fa <= table.angles - 1))
+				return VelocityLookup.ANGLE_HIGH;
+			s = Math.min((int) (fa / angleDegree), segments - 1);
+			int a0 = Math.min(s * angleDegree,
+				table.angles - 1 - angleDegree);
+			y = 2.0 * (fa - a0) / angleDegree - 1.0;
+		} else {
+			if (!(angle >= table.firstAngle - ANGLE_TOLERANCE))
+				return VelocityLookup.ANGLE_LOW;
+			if (!(angle <= table.firstAngle + ANGLE_TOLERANCE))
+				return VelocityLookup.ANGLE_HIGH;
+		}
+		int lo = segmentPiece[s];
+		int hi = segmentPiece[s + 1] - 1;
+		if (!(range >= pieceLow[lo]))
+			return VelocityLookup.RANGE_LOW;
+		if (!(range <= pieceHigh[hi]))
+			return VelocityLookup.RANGE_HIGH;
+		// Find the last piece starting at or below range
+		while (lo < hi) {
+			int mid = (lo + hi + 1) >>> 1;
+			if (pieceLow[mid] <= range)
+				lo = mid;
+			else
+				hi = mid - 1;
+		}
+		if (!(range <= pieceHigh[lo]))
+			return NO_SHOT;
+		double x = normalize(range, pieceLow[lo], pieceHigh[lo]);
+		int k = lo * COLUMNS * terms;
+		for (int c = 0; c < COLUMNS; c++) {
+			out[c] = clenshaw(coeffs, k, rangeDegree,
+				angleDegree, x, y);
+			k += terms;
+		}
+		return OK;
+	}
+
+	/** Certify the maximum error on every table entry the model covers.
+	 * An entry with no shot, where the model gives one, has infinite
+	 * error.
+	 * @return Maximum error for each column (m/s), then the number of
+	 *         entries covered, then the number of entries with a shot. */
+	private double[] certify() {
+		double[] err = new double[COLUMNS + 2];
+		double[] v = new double[COLUMNS];
+		for (int a = 0; a < table.angles; a++) {
+			for (int r = 0; r < table.ranges; r++) {
+				double angle = table.getAngle(a);
+				if (velocity[a][r * COLUMNS] > 0.0)
+					err[COLUMNS + 1]++;
+				if (evaluate(angle, getRange(r), v) != OK)
+					continue;
+				int i = r * COLUMNS;
+				for (int c = 0; c < COLUMNS; c++) {
+					double d = v[c] - velocity[a][i + c];
+					double e = (velocity[a][i] > 0.0)
+					         ? Math.abs(d)
+					         : Double.POSITIVE_INFINITY;
+					err[c] = Math.max(err[c], e);
+				}
+				err[COLUMNS]++;
+			}
+		}
+		return err;
+	}
+
+	/** Certify the maximum error against the simulator at the middle of
+	 * every table cell the model covers, halfway between two adjacent
+	 * table angles and two adjacent table ranges.  With a single angle,
+	 * cells are between adjacent ranges only.
+	 * @return Maximum error for each column (m/s), then the number of
+	 *         midpoints, then the number where the simulator found no
+	 *         shot. */
+	private double[] certifyMidpoints(Settings settings) {
+		ArrayList<double[]> points = new ArrayList<>();
+		double[] v = new double[COLUMNS];
+		for (int a = 0; a < Math.max(table.angles - 1, 1); a++) {
+			double angle = (table.angles > 1)
+			             ? table.getAngle(a) + 0.5 * table.angleStep
+			             : table.firstAngle;
+			for (int r = 0; r + 1 < table.ranges; r++) {
+				double range = getRange(r) + 0.5 * table.rangeStep;
+				if (evaluate(angle, range, v) == OK)
+					points.add(new double[] { angle, range });
+			}
+		}
+		double[] err = check(points, settings);
+		return new double[] {
+			err[0], err[1], err[2], points.size(), err[COLUMNS],
+		};
+	}
+
+	/** Spot check the surrogate against the simulator, at random angles
+	 * and whole centimeter ranges within each segment.
+	 * @return Maximum error for each column (m/s), then the number of
+	 *         points where the simulator found no shot. */
+	private double[] verify(int points, long seed, Settings settings) {
+		SplittableRandom rng = new SplittableRandom(seed);
+		ArrayList<double[]> spots = new ArrayList<>();
+		for (int i = 0; i < points; i++) {
+			int s = rng.nextInt(segments);
+			int a0 = segmentAngle(s);
+			double angle = table.getAngle(a0) + rng.nextDouble() *
+				angleDegree * table.angleStep;
+			double low = pieceLow[segmentPiece[s]];
+			double high = pieceHigh[segmentPiece[s + 1] - 1];
+			int lo = (int) Math.ceil(low * 100.0);
+			int hi = (int) Math.floor(high * 100.0);
+			int range = lo + rng.nextInt(hi - lo + 1);
+			spots.add(new double[] { angle, range / 100.0 });
+		}
+		return check(spots, settings);
+	}
+
+	/** Check points against the simulator, in parallel.
+	 * @param points Angle (degrees) and range (m) of each point.
+	 * @return Maximum error for each column (m/s), then the number of
+	 *         points where the simulator found no shot. */
+	private double[] check(ArrayList<double[]> points, Settings settings) {
+		Environment env = new Environment("table", table.gravity,
+			table.airDensity, table.airViscosity);
+		double[][] errs = points.parallelStream()
+			.map(p -> spotCheck(env, p[0], p[1], settings))
+			.toArray(double[][]::new);
+		double[] err = new double[COLUMNS + 1];
+		for (double[] e : errs) {
+			if (e == null)
+				err[COLUMNS]++;
+			else {
+				for (int c = 0; c < COLUMNS; c++)
+					err[c] = Math.max(err[c], e[c]);
+			}
+		}
+		return err;
+	}
+
+	/** Check one point against the simulator.
+	 * @param range Range (m).
+	 * @return Error for each column (m/s), or null for no shot. */
+	private double[] spotCheck(Environment env, double angle, double range,
+		Settings settings)
+	{
+		Speeds s = Simulator.trace(env, angle, range, settings, null);
+		double[] v = new double[COLUMNS];
+		if (!s.isValid() || evaluate(angle, range, v) != OK)
+			return null;
+		return new double[] {
+			Math.abs(v[0] - s.optimal),
+			Math.abs(v[1] - s.high),
+			Math.abs(v[2] - s.low),
+		};
+	}
+
+	/** Describe the ranges a segment covers, joining adjacent pieces */
+	private String describeCoverage(int s) {
+		StringBuilder sb = new StringBuilder();
+		int p = segmentPiece[s];
+		int end = segmentPiece[s + 1];
+		while (p < end) {
+			double low = pieceLow[p];
+			while (p + 1 < end && pieceLow[p + 1] == pieceHigh[p])
+				p++;
+			if (sb.length() > 0)
+				sb.append(", ");
+			sb.append(String.format(Locale.ROOT, "%.2f to %.2f", low,
+				pieceHigh[p]));
+			p++;
+		}
+		return sb.toString();
+	}
+
+	/** Format errors for each column */
+	static private String formatErrors(double[] err) {
+		StringBuilder sb = new StringBuilder();
+		for (int c = 0; c < COLUMNS; c++) {
+			sb.append(String.format(Locale.ROOT, " %s %.5f",
+				COLUMN_NAMES[c], err[c]));
+		}
+		return sb.toString();
+	}
+
+	/** Write a documented static field as Java source */
+	static private void writeField(PrintWriter w, String doc, String decl) {
+		w.println();
+		w.println("\t/** " + doc + " */");
+		w.println("\tstatic " + decl + ";");
+	}
+
+	/** Write an array of doubles as Java source */
+	static private void writeArray(PrintWriter w, String doc, String name,
+		double[] v)
+	{
+		w.println();
+		w.println("\t/** " + doc + " */");
+		w.println("\tstatic private final double[] " + name + " = {");
+		for (int i = 0; i < v.length; i += PER_LINE) {
+			StringBuilder sb = new StringBuilder("\t\t");
+			int end = Math.min(i + PER_LINE, v.length);
+			for (int j = i; j < end; j++) {
+				if (j > i)
+					sb.append(' ');
+				sb.append(v[j]).append(',');
+			}
+			w.println(sb);
+		}
+		w.println("\t};");
+	}
+
+	/** Write the evaluator class to NAME.java.
+	 * @param tableError Maximum error on table entries (m/s).
+	 * @param midError Maximum error at table cell midpoints (m/s).
+	 * @param spotError Maximum error on spot checks (m/s), or NaN.
+	 * @param spots Number of spot checks compared.
+	 * @param coverage Share of table entries with a shot covered. */
+	private void write(String name, String source, double tableError,
+		double midError, double spotError, int spots, double coverage)
+		throws IOException
+	{
+		try (PrintWriter w = new PrintWriter(new FileWriter(name +
+			".java")))
+		{
+			writeClass(w, name, source, tableError, midError,
+				spotError, spots, coverage);
+		}
+	}
+
+	/** Write the evaluator class */
+	private void writeClass(PrintWriter w, String name, String source,
+		double tableError, double midError, double spotError, int spots,
+		double coverage)
+	{
+		String spot = Double.isNaN(spotError)
+		            ? "Double.NaN"
+		            : Double.toString(spotError);
+		w.println("/** Surrogate velocity model, generated by " +
+			"Surrogate from " + source + ".");
+		w.println(" *");
+		w.println(" * Do not edit.  Maximum error on table entries: " +
+			tableError + " m/s.");
+		w.println(" * Maximum error at table cell midpoints: " +
+			midError + " m/s.");
+		w.println(" * Maximum error on " + spots + " spot checks " +
+			"between table angles: " + spot + " m/s.");
+		w.println(" *");
+		w.println(" * Ranges covered (m), with no shot in between:");
+		for (int s = 0; s < segments; s++) {
+			int a0 = segmentAngle(s);
+			w.println(String.format(Locale.ROOT,
+				" *   angles %.3f to %.3f: %s", table.getAngle(a0),
+				table.getAngle(a0 + angleDegree),
+				describeCoverage(s)));
+		}
+		w.println(" */");
+		w.println("public class " + name + " {");
+		writeField(w, "Evaluation succeeded",
+			"public final int OK = 0");
+		writeField(w, "Range is below the model",
+			"public final int RANGE_LOW = 1");
+		writeField(w, "Range is above the model",
+			"public final int RANGE_HIGH = 2");
+		writeField(w, "Angle is below the model",
+			"public final int ANGLE_LOW = 3");
+		writeField(w, "Angle is above the model",
+			"public final int ANGLE_HIGH = 4");
+		writeField(w, "No shot at the range, between covered runs",
+			"public final int NO_SHOT = 5");
+		writeField(w, "Maximum error on table entries (m/s)",
+			"public final double MAX_TABLE_ERROR = " + tableError);
+		writeField(w, "Maximum error at table cell midpoints (m/s)",
+			"public final double MAX_MIDPOINT_ERROR = " + midError);
+		writeField(w, "Maximum error on " + spots + " spot checks " +
+			"between table angles (m/s)",
+			"public final double MAX_SPOT_ERROR = " + spot);
+		writeField(w, "Share of table entries with a shot covered",
+			"public final double COVERAGE = " + coverage);
+		writeField(w, "Number of table angles",
+			"private final int ANGLES = " + table.angles);
+		writeField(w, "First table angle (degrees)",
+			"private final double FIRST_ANGLE = " + table.firstAngle);
+		writeField(w, "Table angle step (degrees)",
+			"private final double ANGLE_STEP = " + table.angleStep);
+		writeField(w, "Tolerance for matching a single angle (degrees)",
+			"private final double ANGLE_TOLERANCE = " +
+			ANGLE_TOLERANCE);
+		writeField(w, "Number of angle segments",
+			"private final int SEGMENTS = " + segments);
+		writeField(w, "Chebyshev degree in range",
+			"private final int RANGE_DEGREE = " + rangeDegree);
+		writeField(w, "Chebyshev degree in angle",
+			"private final int ANGLE_DEGREE = " + angleDegree);
+		writeField(w, "Coefficients for each column of a piece",
+			"private final int TERMS = " + terms);
+		StringBuilder sp = new StringBuilder();
+		for (int p : segmentPiece) {
+			if (sp.length() > 0)
+				sp.append(", ");
+			sp.append(p);
+		}
+		writeField(w, "First piece of each segment, with one more " +
+			"for the end", "private final int[] SEGMENT_PIECE = { " +
+			sp + " }");
+		writeArray(w, "Lowest range of each piece (m)", "PIECE_LOW",
+			pieceLow);
+		writeArray(w, "Highest range of each piece (m)", "PIECE_HIGH",
+			pieceHigh);
+		writeArray(w, "Coefficients [piece][column][range degree]" +
+			"[angle degree]", "COEFFS", coeffs);
+		for (String line : EVALUATOR)
+			w.println(line);
+		w.println("}");
+	}
+
+	/** Source of the generated evaluator methods, matching evaluate and
+	 * clenshaw */
+	static private final String[] EVALUATOR = {
+		"",
+		"\t/** Sum a Chebyshev series in range and angle */",
+		"\tstatic private double clenshaw(int k, double x, double y) {",
+		"\t\tdouble b1 = 0.0;",
+		"\t\tdouble b2 = 0.0;",
+		"\t\tfor (int i = RANGE_DEGREE; i >= 0; i--) {",
+		"\t\t\tdouble a = clenshaw(k + i * (ANGLE_DEGREE + 1), y);",
+		"\t\t\tdouble b0 = a + 2.0 * x * b1 - b2;",
+		"\t\t\tb2 = b1;",
+		"\t\t\tb1 = b0;",
+		"\t\t}",
+		"\t\treturn b1 - x * b2;",
+		"\t}",
+		"",
+		"\t/** Sum a Chebyshev series in angle */",
+		"\tstatic private double clenshaw(int k, double y) {",
+		"\t\tdouble b1 = 0.0;",
+		"\t\tdouble b2 = 0.0;",
+		"\t\tfor (int j = ANGLE_DEGREE; j >= 0; j--) {",
+		"\t\t\tdouble b0 = COEFFS[k + j] + 2.0 * y * b1 - b2;",
+		"\t\t\tb2 = b1;",
+		"\t\t\tb1 = b0;",
+		"\t\t}",
+		"\t\treturn b1 - y * b2;",
+		"\t}",
+		"",
+		"\t/** Evaluate velocities.  This does no allocation.",
+		"\t * @param angle Hood angle (degrees).",
+		"\t * @param range Range (m).",
+		"\t * @param out Array to store optimal, max and min velocity " +
+			"(m/s).",
+		"\t *            Left unchanged unless evaluation succeeds.",
+		"\t * @return Status: OK, or the reason for no velocity. */",
+		"\tstatic public int evaluate(double angle, double range, " +
+			"double[] out) {",
+		"\t\tint s = 0;",
+		"\t\tdouble y = 0.0;",
+		"\t\tif (ANGLES > 1) {",
+		"\t\t\tdouble fa = (angle - FIRST_ANGLE) / ANGLE_STEP;",
+		"\t\t\tif (!(fa >= 0.0))",
+		"\t\t\t\treturn ANGLE_LOW;",
+		"\t\t\tif (!(fa <= ANGLES - 1))",
+		"\t\t\t\treturn ANGLE_HIGH;",
+		"\t\t\ts = Math.min((int) (fa / ANGLE_DEGREE), SEGMENTS - 1);",
+		"\t\t\tint a0 = Math.min(s * ANGLE_DEGREE,",
+		"\t\t\t\tANGLES - 1 - ANGLE_DEGREE);",
+		"\t\t\ty = 2.0 * (fa - a0) / ANGLE_DEGREE - 1.0;",
+		"\t\t} else {",
+		"\t\t\tif (!(angle >= FIRST_ANGLE - ANGLE_TOLERANCE))",
+		"\t\t\t\treturn ANGLE_LOW;",
+		"\t\t\tif (!(angle <= FIRST_ANGLE + ANGLE_TOLERANCE))",
+		"\t\t\t\treturn ANGLE_HIGH;",
+		"\t\t}",
+		"\t\tint lo = SEGMENT_PIECE[s];",
+		"\t\tint hi = SEGMENT_PIECE[s + 1] - 1;",
+		"\t\tif (!(range >= PIECE_LOW[lo]))",
+		"\t\t\treturn RANGE_LOW;",
+		"\t\tif (!(range <= PIECE_HIGH[hi]))",
+		"\t\t\treturn RANGE_HIGH;",
+		"\t\twhile (lo < hi) {",
+		"\t\t\tint mid = (lo + hi + 1) >>> 1;",
+		"\t\t\tif (PIECE_LOW[mid] <= range)",
+		"\t\t\t\tlo = mid;",
+		"\t\t\telse",
+		"\t\t\t\thi = mid - 1;",
+		"\t\t}",
+		"\t\tif (!(range <= PIECE_HIGH[lo]))",
+		"\t\t\treturn NO_SHOT;",
+		"\t\tdouble low = PIECE_LOW[lo];",
+		"\t\tdouble high = PIECE_HIGH[lo];",
+		"\t\tdouble x = (2.0 * range - low - high) / (high - low);",
+		"\t\tint k = lo * 3 * TERMS;",
+		"\t\tfor (int c = 0; c < 3; c++) {",
+		"\t\t\tout[c] = clenshaw(k, x, y);",
+		"\t\t\tk += TERMS;",
+		"\t\t}",
+		"\t\treturn OK;",
+		"\t}",
+	};
+
+	/** Fit a surrogate to a binary table, and write its evaluator */
+	static public void main(String[] args) throws IOException {
+		String name = "VelocitySurrogate";
+		double tolerance = TOLERANCE;
+		int degree = RANGE_DEGREE;
+		int angleDegree = ANGLE_DEGREE;
+		int verify = VERIFY;
+		long seed = 1;
+		Settings settings = Settings.DEFAULT;
+		String file = null;
+		for (int i = 0; i < args.length; i++) {
+			if (i == 0 && !args[i].startsWith("--"))
+				file = args[i];
+			else if (args[i].startsWith("--class="))
+				name = args[i].substring(8);
+			else if (args[i].startsWith("--tolerance="))
+				tolerance = Double.parseDouble(
+					args[i].substring(12));
+			else if (args[i].startsWith("--degree="))
+				degree = Integer.parseInt(args[i].substring(9));
+			else if (args[i].startsWith("--angle-degree="))
+				angleDegree = Integer.parseInt(
+					args[i].substring(15));
+			else if (args[i].startsWith("--verify="))
+				verify = Integer.parseInt(args[i].substring(9));
+			else if (args[i].startsWith("--seed="))
+				seed = Long.parseLong(args[i].substring(7));
+			else if (args[i].startsWith("--settings="))
+				settings = Settings.parse(args[i].substring(11));
+			else
+				throw new IllegalArgumentException(args[i]);
+		}
+		if (file == null)
+			throw new IllegalArgumentException("No table file");
+		if (degree < 1 || angleDegree < 1)
+			throw new IllegalArgumentException(
+				"Degree must be 1 or more");
+		TableFile table = TableFile.map(file);
+		Surrogate sg = new Surrogate(table, tolerance, degree,
+			angleDegree);
+		sg.fit();
+		double[] err = sg.certify();
+		double maxError = Math.max(err[0], Math.max(err[1], err[2]));
+		int pieces = sg.pieceLow.length;
+		System.err.println("Surrogate: " + sg.segments + " segments, " +
+			pieces + " pieces, " + sg.coeffs.length +
+			" coefficients (table has " + table.angles *
+			table.ranges * COLUMNS + " entries)");
+		for (int s = 0; s < sg.segments; s++) {
+			int a0 = sg.segmentAngle(s);
+			System.err.println(String.format(Locale.ROOT,
+				"  angles %.3f to %.3f: ranges %s m",
+				table.getAngle(a0),
+				table.getAngle(a0 + sg.angleDegree),
+				sg.describeCoverage(s)));
+		}
+		double coverage = err[COLUMNS] / err[COLUMNS + 1];
+		System.err.println(String.format(Locale.ROOT, "Covers %d of %d " +
+			"table entries with a shot (%.1f%%)", (int) err[COLUMNS],
+			(int) err[COLUMNS + 1], 100.0 * coverage));
+		System.err.println("Certified max error on " +
+			(int) err[COLUMNS] + " table entries (m/s):" +
+			formatErrors(err));
+		double[] mid = sg.certifyMidpoints(settings);
+		double midError = Math.max(mid[0], Math.max(mid[1], mid[2]));
+		System.err.println("Certified max error on " + (int) mid[COLUMNS] +
+			" table cell midpoints (m/s):" + formatErrors(mid) + " (" +
+			(int) mid[COLUMNS + 1] + " with no shot)");
+		double spotError = Double.NaN;
+		int spots = 0;
+		if (verify > 0) {
+			double[] v = sg.verify(verify, seed, settings);
+			System.err.println("Max error on " + verify +
+				" simulator spot checks (m/s):" + formatErrors(v) +
+				" (" + (int) v[COLUMNS] + " with no shot)");
+			spots = verify - (int) v[COLUMNS];
+			if (spots > 0) {
+				spotError = Math.max(v[0], Math.max(v[1],
+					v[2]));
+			}
+		}
+		sg.write(name, file, maxError, midError, spotError, spots,
+			coverage);
+		System.err.println("Wrote " + name + ".java");
+	}
+}
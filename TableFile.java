@@ -0,0 +1,329 @@
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/** Binary range velocity table file.
+ *
+ * A file holds tables for one or more evenly spaced launch angles, each
+ * with one row of optimal, max and min velocity per range step.  All
+ * values are big-endian.
+ *
+ * Offset | Type   | Field
+ * -------|--------|------------------------------------------------
+ *      0 | int    | Magic number ("PCVT")
+ *      4 | int    | Format version
+ *      8 | int    | Number of angles
+ *     12 | int    | Number of ranges
+ *     16 | double | First angle (degrees)
+ *     24 | double | Angle step (degrees)
+ *     32 | double | First range (m)
+ *     40 | double | Range step (m)
+ *     48 | double | Acceleration of gravity (m/s^2)
+ *     56 | double | Air mass density (kg/m^3)
+ *     64 | double | Air viscosity coefficient (Pa * s)
+ *     72 | long   | CRC-32 of velocity data
+ *     80 | double | Velocity data [angle][range][optimal, max, min]
+ */
+public class TableFile {
+
+	/** Magic number ("PCVT") */
+	static private final int MAGIC = 0x50435654;
+
+	/** Format version */
+	static private final int VERSION = 1;
+
+	/** Size of header (bytes) */
+	static final int HEADER_BYTES = 80;
+
+	/** Number of velocity columns (optimal, max, min) */
+	static private final int COLUMNS = 3;
+
+	/** Range of first row in CSV tables (m) */
+	static private final double CSV_FIRST_RANGE = 0.01;
+
+	/** Range step in CSV tables (m) */
+	static private final double CSV_RANGE_STEP = 0.01;
+
+	/** Number of rows in CSV tables */
+	static private final int CSV_RANGES = 1000;
+
+	/** Tolerance for matching angles (degrees) */
+	static private final double ANGLE_TOLERANCE = 1e-6;
+
+	/** Number of angles */
+	public final int angles;
+
+	/** Number of ranges */
+	public final int ranges;
+
+	/** First angle (degrees) */
+	public final double firstAngle;
+
+	/** Angle step (degrees) */
+	public final double angleStep;
+
+	/** First range (m) */
+	public final double firstRange;
+
+	/** Range step (m) */
+	public final double rangeStep;
+
+	/** Acceleration of gravity (m/s^2) */
+	public final double gravity;
+
+	/** Air mass density (kg/m^3) */
+	public final double airDensity;
+
+	/** Air viscosity coefficient (Pa * s) */
+	public final double airViscosity;
+
+	/** Velocity data (mapped from file, or on heap) */
+	private final ByteBuffer data;
+
+	/** Read header from a buffer, and check its velocity data */
+	private TableFile(ByteBuffer buf) throws IOException {
+		if (buf.capacity() < HEADER_BYTES || buf.getInt(0) != MAGIC)
+			throw new IOException("Not a range velocity table");
+		if (buf.getInt(4) != VERSION) {
+			throw new IOException("Unsupported table version: " +
+				buf.getInt(4));
+		}
+		angles = buf.getInt(8);
+		ranges = buf.getInt(12);
+		firstAngle = buf.getDouble(16);
+		angleStep = buf.getDouble(24);
+		firstRange = buf.getDouble(32);
+		rangeStep = buf.getDouble(40);
+		gravity = buf.getDouble(48);
+		airDensity = buf.getDouble(56);
+		airViscosity = buf.getDouble(64);
+		long bytes = (long) angles * ranges * COLUMNS * Double.BYTES;
+		if (angles < 1 || ranges < 1 ||
+		    buf.capacity() != HEADER_BYTES + bytes)
+			throw new IOException("Truncated range velocity table");
+		buf.position(HEADER_BYTES);
+		data = buf.slice();
+		if (checksum(data) != buf.getLong(72))
+			throw new IOException("Range velocity table checksum");
+	}
+
+	/** Map a binary table file into memory */
+	static public TableFile map(String file) throws IOException {
+		try (FileChannel ch = FileChannel.open(Paths.get(file),
+			StandardOpenOption.READ))
+		{
+			MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY,
+				0, ch.size());
+			return new TableFile(buf);
+		}
+	}
+
+	/** Calculate CRC-32 of velocity data */
+	static private long checksum(ByteBuffer data) {
+		CRC32 crc = new CRC32();
+		crc.update(data.duplicate());
+		return crc.getValue();
+	}
+
+	/** Get the index of an angle.
+	 * @throws IOException if the angle is not in the table. */
+	public int angleIndex(double angle) throws IOException {
+		int i = (angleStep != 0.0)
+		      ? (int) Math.round((angle - firstAngle) / angleStep)
+		      : 0;
+		if (i < 0 || i >= angles ||
+		    Math.abs(getAngle(i) - angle) > ANGLE_TOLERANCE)
+			throw new IOException("Angle not in table: " + angle);
+		return i;
+	}
+
+	/** Get an angle by index (degrees) */
+	public double getAngle(int i) {
+		return firstAngle + i * angleStep;
+	}
+
+	/** Get all velocities for one angle (a view, not a copy) */
+	public DoubleBuffer getVelocities(int a) {
+		int len = ranges * COLUMNS;
+		ByteBuffer b = data.duplicate();
+		b.position(a * len * Double.BYTES);
+		b.limit((a + 1) * len * Double.BYTES);
+		return b.slice().asDoubleBuffer();
+	}
+
+	/** Check if the table was made for an environment, with the same
+	 * gravity and air */
+	public boolean isFor(Environment env) {
+		return gravity == env.gravity && airDensity == env.airDensity &&
+		       airViscosity == env.airViscosity;
+	}
+
+	/** Get a range velocity table for one angle.
+	 * @throws IOException if the angle is not in the table. */
+	public RangeVelocityTable getTable(double angle) throws IOException {
+		return new RangeVelocityTable(firstRange, rangeStep,
+			getVelocities(angleIndex(angle)));
+	}
+
+	/** Create a header, for ranges from 1 cm in 1 cm steps */
+	static ByteBuffer header(Environment env, int angles, int ranges,
+		double firstAngle, double angleStep, long crc)
+	{
+		ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+		header.putInt(MAGIC);
+		header.putInt(VERSION);
+		header.putInt(angles);
+		header.putInt(ranges);
+		header.putDouble(firstAngle);
+		header.putDouble(angleStep);
+		header.putDouble(CSV_FIRST_RANGE);
+		header.putDouble(CSV_RANGE_STEP);
+		header.putDouble(env.gravity);
+		header.putDouble(env.airDensity);
+		header.putDouble(env.airViscosity);
+		header.putLong(crc);
+		header.flip();
+		return header;
+	}
+
+	/** Write a binary table file.
+	 * @param velocity Velocities [angle][range * 3]. */
+	static public void write(String file, Environment env,
+		double firstAngle, double angleStep, double[][] velocity)
+		throws IOException
+	{
+		int angles = velocity.length;
+		int ranges = velocity[0].length / COLUMNS;
+		ByteBuffer data = ByteBuffer.allocate(angles * ranges * COLUMNS *
+			Double.BYTES);
+		for (double[] rv : velocity) {
+			for (double v : rv)
+				data.putDouble(v);
+		}
+		data.flip();
+		ByteBuffer header = header(env, angles, ranges, firstAngle,
+			angleStep, checksum(data));
+		Path path = Paths.get(file);
+		try (FileChannel ch = FileChannel.open(path,
+			StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+			StandardOpenOption.TRUNCATE_EXISTING))
+		{
+			while (header.hasRemaining())
+				ch.write(header);
+			while (data.hasRemaining())
+				ch.write(data);
+		}
+	}
+
+	/** Read a CSV table for one angle (rows of optimal, max, min) */
+	static private double[] readCsv(String file) throws IOException {
+		double[] rv = new double[CSV_RANGES * COLUMNS];
+		try (BufferedReader br = new BufferedReader(new FileReader(file))) {
+			for (int i = 0; i < CSV_RANGES; i++) {
+				String line = br.readLine();
+				if (line == null)
+					break;
+				parseRow(line.split(","), 0, rv, i, file);
+			}
+		}
+		return rv;
+	}
+
+	/** Read a combined CSV table (rows of angle, range, optimal, max,
+	 * min), by angle */
+	static private TreeMap<Double, double[]> readGridCsv(String file)
+		throws IOException
+	{
+		TreeMap<Double, double[]> grid = new TreeMap<>();
+		try (BufferedReader br = new BufferedReader(new FileReader(file))) {
+			String line = br.readLine(); // header
+			while ((line = br.readLine()) != null) {
+				String[] v = line.split(",");
+				double angle = parse(v, 0, file);
+				int i = (int) Math.round((parse(v, 1, file) -
+					CSV_FIRST_RANGE) / CSV_RANGE_STEP);
+				if (i < 0 || i >= CSV_RANGES)
+					throw new IOException("Bad range: " + line);
+				double[] rv = grid.get(angle);
+				if (rv == null) {
+					rv = new double[CSV_RANGES * COLUMNS];
+					grid.put(angle, rv);
+				}
+				parseRow(v, 2, rv, i, file);
+			}
+		}
+		return grid;
+	}
+
+	/** Parse one row of velocities into a table */
+	static private void parseRow(String[] v, int col, double[] rv, int i,
+		String file) throws IOException
+	{
+		for (int c = 0; c < COLUMNS; c++)
+			rv[i * COLUMNS + c] = parse(v, col + c, file);
+	}
+
+	/** Parse one value in a CSV row */
+	static private double parse(String[] v, int col, String file)
+		throws IOException
+	{
+		try {
+			return Double.parseDouble(v[col]);
+		}
+		catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+			throw new IOException("Bad CSV row in " + file + ": " +
+				String.join(",", v), e);
+		}
+	}
+
+	/** Convert a CSV table to a binary table file.
+	 *
+	 * Usage: TableFile [csv] [bin] [angle] [--environment="spec"]
+	 *
+	 * With an angle, the CSV is a single angle table, such as
+	 * range_velocity_45.csv.  Without, it is a combined table from
+	 * Simulator --angles.  The environment the CSV was made for (as by
+	 * Environment.parse) is recorded in the header, and defaults to
+	 * Environment.DEFAULT. */
+	static public void main(String[] args) throws IOException {
+		Environment env = Environment.DEFAULT;
+		ArrayList<String> pos = new ArrayList<>();
+		for (String arg : args) {
+			if (arg.startsWith("--environment="))
+				env = Environment.parse(arg.substring(14));
+			else
+				pos.add(arg);
+		}
+		String[] v = pos.toArray(new String[0]);
+		if (v.length > 2) {
+			double angle = Double.parseDouble(v[2]);
+			write(v[1], env, angle, 0.0, new double[][] {
+				readCsv(v[0])
+			});
+		} else {
+			TreeMap<Double, double[]> grid = readGridCsv(v[0]);
+			ArrayList<Double> a = new ArrayList<>(grid.keySet());
+			double step = (a.size() > 1)
+			            ? (a.get(a.size() - 1) - a.get(0)) /
+			              (a.size() - 1)
+			            : 0.0;
+			for (int i = 0; i < a.size(); i++) {
+				if (Math.abs(a.get(0) + i * step - a.get(i)) >
+				    ANGLE_TOLERANCE)
+					throw new IOException("Uneven angles: " + a);
+			}
+			write(v[1], env, a.get(0), step,
+				grid.values().toArray(new double[0][]));
+		}
+	}
+}
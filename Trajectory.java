@@ -17,9 +17,20 @@ public class Trajectory {
 		velocityMS = velocityFromHeight();
 	}
 
+	/** Calculate velocity for a trajectory through the center of a port
+	 * (0 if it cannot be reached at the launch angle) */
+	static public double velocityToPort(Launcher launcher, Port port) {
+		double dx = launcher.rangeM + port.recessedM;
+		double dy = port.elevationM - launcher.elevationM;
+		double c = Math.cos(launcher.angle);
+		double a1 = launcher.environment.gravity * dx * dx;
+		double a2 = 2.0 * c * c * (dx * Math.tan(launcher.angle) - dy);
+		return (a2 > 0.0) ? Math.sqrt(a1 / a2) : 0.0;
+	}
+
 	/** Calculate velocity from apex height */
 	private double velocityFromHeight() {
-		double a1 = 2.0 * PowerCell.GRAVITY * apexHeightM;
+		double a1 = 2.0 * launcher.environment.gravity * apexHeightM;
 		double a2 = Math.sin(launcher.angle);
 		return Math.sqrt(a1 / (a2 * a2));
 	}
@@ -34,7 +45,7 @@ public class Trajectory {
 	/** Calculate power cell height (m) at given time */
 	public double heightAtTime(double t) {
 		double a1 = velocityMS * t * Math.sin(launcher.angle);
-		double a2 = PowerCell.GRAVITY / 2.0 * t * t;
+		double a2 = launcher.environment.gravity / 2.0 * t * t;
 		return a1 - a2;
 	}
 }
@@ -0,0 +1,438 @@
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Locale;
+
+/** Recorder for flight paths of simulated shots.
+ *
+ * Every integration step of a shot is offered to the recorder, which keeps
+ * only enough points to draw the path, and streams them to a CSV file with
+ * one row per point: shot number, launch velocity, time, position and
+ * velocity.  Points are decimated in one of three ways:
+ *
+ *   distance:M    When the power cell has moved M meters from the last point
+ *   angle:DEG     When its heading has turned DEG degrees from the last point
+ *   lttb:N        Largest-triangle-three-buckets, down to N points a shot
+ *
+ * The first and last point of each shot are always kept.  Memory use is
+ * fixed, however long a shot flies: distance and angle keep only the last
+ * point, and LTTB keeps a buffer of a few times N points.
+ *
+ * A simulator only calls its recorder if it has one, so recording costs
+ * nothing when it is off. */
+abstract public class TrajectoryRecorder implements Closeable {
+
+	/** Size of output buffer (chars) */
+	static private final int BUFFER_SIZE = 1 << 16;
+
+	/** Header for output */
+	static private final String HEADER = "shot,velocity,time,x,y,vx,vy";
+
+	/** Buffered output */
+	private final Writer out;
+
+	/** Close the output when done (false for standard output) */
+	private final boolean owned;
+
+	/** Number of the current shot (from 1) */
+	private int shot = 0;
+
+	/** Launch velocity of the current shot (m/s) */
+	private double velocity;
+
+	/** Create a recorder */
+	protected TrajectoryRecorder(Writer w, boolean o) throws IOException {
+		out = new BufferedWriter(w, BUFFER_SIZE);
+		owned = o;
+		out.write(HEADER);
+		out.write('\n');
+	}
+
+	/** Create a recorder.
+	 * @param spec Decimation, such as "distance:0.01", "angle:1" or
+	 *             "lttb:200".
+	 * @param path Output file, or null for standard output. */
+	static public TrajectoryRecorder create(String spec, String path)
+		throws IOException
+	{
+		String[] v = spec.split(":");
+		if (v.length != 2)
+			throw new IllegalArgumentException("Bad decimation: " +
+				spec);
+		double arg = Double.parseDouble(v[1]);
+		Writer w = (path != null)
+		         ? new FileWriter(path)
+		         : new OutputStreamWriter(System.out);
+		boolean owned = (path != null);
+		switch (v[0]) {
+		case "distance":
+			return new Distance(w, owned, arg);
+		case "angle":
+			return new Angle(w, owned, Math.toRadians(arg));
+		case "lttb":
+			return new Lttb(w, owned, (int) arg);
+		default:
+			w.close();
+			throw new IllegalArgumentException("Bad decimation: " +
+				spec);
+		}
+	}
+
+	/** Start recording a shot, at launch */
+	public void start(double v, PowerCell cell) {
+		shot++;
+		velocity = v;
+		begin(cell);
+	}
+
+	/** Begin a shot, with the power cell at launch */
+	abstract protected void begin(PowerCell cell);
+
+	/** Add the power cell state after one integration step.
+	 * @param t Time from launch (s). */
+	abstract public void add(double t, PowerCell cell);
+
+	/** Finish a shot, with the power cell in its final state.
+	 * @param t Duration of flight (s). */
+	abstract public void finish(double t, PowerCell cell);
+
+	/** Write one point of the current shot */
+	protected void write(double t, double x, double y, double vx,
+		double vy)
+	{
+		try {
+			out.write(String.format(Locale.ROOT,
+				"%d,%.4f,%.5f,%.5f,%.5f,%.5f,%.5f\n", shot, velocity,
+				t, x, y, vx, vy));
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/** Flush all points, and close the output */
+	@Override
+	public void close() throws IOException {
+		if (owned)
+			out.close();
+		else
+			out.flush();
+	}
+
+	/** Recorder keeping points spaced by distance */
+	static private class Distance extends TrajectoryRecorder {
+
+		/** Distance between points (m) */
+		private final double spacing;
+
+		/** X position of last point written (m) */
+		private double lastX;
+
+		/** Y position of last point written (m) */
+		private double lastY;
+
+		/** Time of last point written (s) */
+		private double lastT;
+
+		/** Create a distance recorder */
+		private Distance(Writer w, boolean o, double s)
+			throws IOException
+		{
+			super(w, o);
+			if (!(s > 0.0))
+				throw new IllegalArgumentException("Bad distance");
+			spacing = s;
+		}
+
+		@Override
+		protected void begin(PowerCell cell) {
+			keep(0.0, cell);
+		}
+
+		@Override
+		public void add(double t, PowerCell cell) {
+			double dx = cell.x - lastX;
+			double dy = cell.y - lastY;
+			if (dx * dx + dy * dy >= spacing * spacing)
+				keep(t, cell);
+		}
+
+		@Override
+		public void finish(double t, PowerCell cell) {
+			// A collision may move the power cell back within a step
+			if (t > lastT || cell.x != lastX)
+				keep(t, cell);
+		}
+
+		/** Keep one point */
+		private void keep(double t, PowerCell cell) {
+			lastX = cell.x;
+			lastY = cell.y;
+			lastT = t;
+			write(t, cell.x, cell.y, cell.vx, cell.vy);
+		}
+	}
+
+	/** Recorder keeping points spaced by change of heading */
+	static private class Angle extends TrajectoryRecorder {
+
+		/** Change of heading between points (radians) */
+		private final double turn;
+
+		/** Heading at last point written (radians) */
+		private double lastHeading;
+
+		/** X position of last point written (m) */
+		private double lastX;
+
+		/** Time of last point written (s) */
+		private double lastT;
+
+		/** Create an angle recorder */
+		private Angle(Writer w, boolean o, double a) throws IOException {
+			super(w, o);
+			if (!(a > 0.0))
+				throw new IllegalArgumentException("Bad angle");
+			turn = a;
+		}
+
+		@Override
+		protected void begin(PowerCell cell) {
+			keep(0.0, cell);
+		}
+
+		@Override
+		public void add(double t, PowerCell cell) {
+			double h = Math.atan2(cell.vy, cell.vx);
+			if (Math.abs(h - lastHeading) >= turn)
+				keep(t, cell);
+		}
+
+		@Override
+		public void finish(double t, PowerCell cell) {
+			// A collision may move the power cell back within a step
+			if (t > lastT || cell.x != lastX)
+				keep(t, cell);
+		}
+
+		/** Keep one point */
+		private void keep(double t, PowerCell cell) {
+			lastHeading = Math.atan2(cell.vy, cell.vx);
+			lastX = cell.x;
+			lastT = t;
+			write(t, cell.x, cell.y, cell.vx, cell.vy);
+		}
+	}
+
+	/** Recorder keeping points by largest-triangle-three-buckets.
+	 *
+	 * Points are buffered until the shot ends, then reduced to the target
+	 * count.  LTTB splits the points between the first and last into
+	 * equal buckets, and keeps the point in each bucket which makes the
+	 * largest triangle with the point kept from the bucket before and the
+	 * average of the bucket after, which preserves peaks and turns.
+	 *
+	 * Whenever the buffer fills, it is reduced to half by LTTB, and from
+	 * then on only every other step is buffered, so that buffered points
+	 * stay evenly spaced over the whole flight. */
+	static private class Lttb extends TrajectoryRecorder {
+
+		/** Buffer size, as a multiple of the target count */
+		static private final int BUFFER_FACTOR = 8;
+
+		/** Target number of points per shot */
+		private final int points;
+
+		/** Buffered times (s) */
+		private final double[] t;
+
+		/** Buffered X positions (m) */
+		private final double[] x;
+
+		/** Buffered Y positions (m) */
+		private final double[] y;
+
+		/** Buffered X velocities (m/s) */
+		private final double[] vx;
+
+		/** Buffered Y velocities (m/s) */
+		private final double[] vy;
+
+		/** Number of buffered points */
+		private int count = 0;
+
+		/** Number of steps for each buffered point */
+		private int stride = 1;
+
+		/** Steps since the last buffered point */
+		private int skipped = 0;
+
+		/** Create an LTTB recorder */
+		private Lttb(Writer w, boolean o, int n) throws IOException {
+			super(w, o);
+			if (n < 3)
+				throw new IllegalArgumentException("Need 3 points");
+			points = n;
+			int size = n * BUFFER_FACTOR;
+			t = new double[size];
+			x = new double[size];
+			y = new double[size];
+			vx = new double[size];
+			vy = new double[size];
+		}
+
+		@Override
+		protected void begin(PowerCell cell) {
+			count = 0;
+			stride = 1;
+			skipped = 0;
+			buffer(0.0, cell);
+		}
+
+		@Override
+		public void add(double time, PowerCell cell) {
+			skipped++;
+			if (skipped < stride)
+				return;
+			skipped = 0;
+			if (count == t.length) {
+				reduce(t.length / 2);
+				stride *= 2;
+			}
+			buffer(time, cell);
+		}
+
+		@Override
+		public void finish(double time, PowerCell cell) {
+			if (count == t.length)
+				reduce(t.length / 2);
+			// The last step may already be buffered
+			if (skipped == 0 && count > 1)
+				count--;
+			buffer(time, cell);
+			if (count > points)
+				reduce(points);
+			for (int i = 0; i < count; i++)
+				write(t[i], x[i], y[i], vx[i], vy[i]);
+		}
+
+		/** Buffer one point */
+		private void buffer(double time, PowerCell cell) {
+			t[count] = time;
+			x[count] = cell.x;
+			y[count] = cell.y;
+			vx[count] = cell.vx;
+			vy[count] = cell.vy;
+			count++;
+		}
+
+		/** Reduce buffered points by LTTB, in place.  Each kept point is
+		 * moved to an index no higher than the start of its bucket, so
+		 * it never overwrites a point still to be read. */
+		private void reduce(int n) {
+			double bucket = (double) (count - 2) / (n - 2);
+			double ax = x[0];
+			double ay = y[0];
+			for (int i = 0; i < n - 2; i++) {
+				int start = (int) (i * bucket) + 1;
+				int end = (int) ((i + 1) * bucket) + 1;
+				int next = Math.min((int) ((i + 2) * bucket) + 1,
+					count);
+				if (i == n - 3)
+					next = count;
+				double cx = 0.0;
+				double cy = 0.0;
+				for (int j = end; j < next; j++) {
+					cx += x[j];
+					cy += y[j];
+				}
+				cx /= next - end;
+				cy /= next - end;
+				int best = start;
+				double most = -1.0;
+				for (int j = start; j < end; j++) {
+					double area = Math.abs((ax - cx) *
+						(y[j] - ay) - (ax - x[j]) * (cy - ay));
+					if (area > most) {
+						most = area;
+						best = j;
+					}
+				}
+				ax = x[best];
+				ay = y[best];
+				move(best, i + 1);
+			}
+			move(count - 1, n - 1);
+			count = n;
+		}
+
+		/** Move a buffered point to a lower index */
+		private void move(int from, int to) {
+			t[to] = t[from];
+			x[to] = x[from];
+			y[to] = y[from];
+			vx[to] = vx[from];
+			vy[to] = vy[from];
+		}
+	}
+
+	/** Trace shots for one range, and write their flight paths.
+	 *
+	 * Usage: TrajectoryRecorder [angle] [range] [options]
+	 *
+	 *   --velocities=V,V,...      Trace these launch velocities (m/s),
+	 *                             instead of every shot of a search
+	 *   --decimate=SPEC           Decimation, default lttb:200
+	 *   --output=FILE             Output file, default standard output
+	 *   --settings="SETTINGS"     Simulation settings, as Settings.parse
+	 *   --environment="ENV"       Environment, as Environment.parse
+	 *
+	 * Without velocities, every shot simulated while finding speeds for
+	 * the range is traced, in order, and the speeds found are reported. */
+	static public void main(String[] args) throws IOException {
+		double angle = Double.parseDouble(args[0]);
+		double range = Double.parseDouble(args[1]);
+		ArrayList<Double> velocities = new ArrayList<>();
+		String spec = "lttb:200";
+		String output = null;
+		Settings settings = Settings.DEFAULT;
+		Environment env = Environment.DEFAULT;
+		for (int i = 2; i < args.length; i++) {
+			if (args[i].startsWith("--velocities=")) {
+				for (String v : args[i].substring(13).split(","))
+					velocities.add(Double.parseDouble(v));
+			} else if (args[i].startsWith("--decimate="))
+				spec = args[i].substring(11);
+			else if (args[i].startsWith("--output="))
+				output = args[i].substring(9);
+			else if (args[i].startsWith("--settings="))
+				settings = Settings.parse(args[i].substring(11));
+			else if (args[i].startsWith("--environment="))
+				env = Environment.parse(args[i].substring(14));
+			else
+				throw new IllegalArgumentException(args[i]);
+		}
+		try (TrajectoryRecorder rec = create(spec, output)) {
+			if (velocities.isEmpty()) {
+				Speeds s = Simulator.trace(env, angle, range,
+					settings, rec);
+				System.err.println(s.isValid()
+					? "optimal " + s.optimal + ", high " + s.high +
+					  ", low " + s.low
+					: "no inner goal");
+			} else {
+				Simulator sim = new Simulator(env, angle, range,
+					settings, rec);
+				for (double v : velocities) {
+					Shot shot = sim.simulate(v);
+					System.err.println(v + ": " + shot);
+				}
+			}
+		}
+	}
+}
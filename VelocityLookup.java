@@ -0,0 +1,197 @@
+import java.io.IOException;
+
+/** Interpolated velocity lookup by hood angle and range.
+ *
+ * Velocities are interpolated bilinearly between the four nearest table
+ * entries.  A lookup does no allocation or boxing, and takes the same
+ * path for every query in the envelope, so it can be called from a
+ * control loop. */
+public class VelocityLookup {
+
+	/** Lookup succeeded */
+	static public final int OK = 0;
+
+	/** Range is below the table */
+	static public final int RANGE_LOW = 1;
+
+	/** Range is above the table */
+	static public final int RANGE_HIGH = 2;
+
+	/** Angle is below the table */
+	static public final int ANGLE_LOW = 3;
+
+	/** Angle is above the table */
+	static public final int ANGLE_HIGH = 4;
+
+	/** No shot for one of the table entries interpolated */
+	static public final int NO_SHOT = 5;
+
+	/** Number of velocity columns (optimal, max, min) */
+	static private final int COLUMNS = 3;
+
+	/** Tolerance for matching the angle of a single angle table */
+	static private final double ANGLE_TOLERANCE = 1e-6;
+
+	/** Tolerance for matching a table entry (fraction of a step) */
+	static private final double ENTRY_TOLERANCE = 1e-9;
+
+	/** Get a description of a lookup status */
+	static public String describe(int status) {
+		switch (status) {
+		case OK: return "ok";
+		case RANGE_LOW: return "range below table";
+		case RANGE_HIGH: return "range above table";
+		case ANGLE_LOW: return "angle below table";
+		case ANGLE_HIGH: return "angle above table";
+		case NO_SHOT: return "no shot";
+		default: return "unknown";
+		}
+	}
+
+	/** Velocities [angle][range][optimal, max, min] */
+	private final double[] velocity;
+
+	/** Number of angles */
+	private final int angles;
+
+	/** Number of ranges */
+	private final int ranges;
+
+	/** First angle (degrees) */
+	private final double firstAngle;
+
+	/** Angles per degree */
+	private final double angleScale;
+
+	/** First range (m) */
+	private final double firstRange;
+
+	/** Ranges per meter */
+	private final double rangeScale;
+
+	/** Offset between adjacent angles in velocity array */
+	private final int angleStride;
+
+	/** Create a velocity lookup from a binary table file */
+	public VelocityLookup(TableFile tf) {
+		angles = tf.angles;
+		ranges = tf.ranges;
+		firstAngle = tf.firstAngle;
+		angleScale = (tf.angleStep != 0.0) ? 1.0 / tf.angleStep : 0.0;
+		firstRange = tf.firstRange;
+		rangeScale = 1.0 / tf.rangeStep;
+		angleStride = ranges * COLUMNS;
+		velocity = new double[angles * angleStride];
+		for (int a = 0; a < angles; a++)
+			tf.getVelocities(a).get(velocity, a * angleStride,
+				angleStride);
+	}
+
+	/** Load a velocity lookup from a binary table file */
+	static public VelocityLookup load(String file) throws IOException {
+		return new VelocityLookup(TableFile.map(file));
+	}
+
+	/** Get the lowest angle in the table (degrees) */
+	public double getMinAngle() {
+		return firstAngle;
+	}
+
+	/** Get the highest angle in the table (degrees) */
+	public double getMaxAngle() {
+		return (angles > 1)
+		      ? firstAngle + (angles - 1) / angleScale
+		      : firstAngle;
+	}
+
+	/** Get the lowest range in the table (m) */
+	public double getMinRange() {
+		return firstRange;
+	}
+
+	/** Get the highest range in the table (m) */
+	public double getMaxRange() {
+		return firstRange + (ranges - 1) / rangeScale;
+	}
+
+	/** Snap a fractional table index to a whole one within rounding
+	 * error, so that a query on an entry gives its neighbours no weight */
+	static private double snap(double f) {
+		double n = Math.rint(f);
+		return (Math.abs(f - n) < ENTRY_TOLERANCE) ? n : f;
+	}
+
+	/** Look up interpolated velocities.
+	 * @param angle Hood angle (degrees).
+	 * @param range Range (m).
+	 * @param out Array to store optimal, max and min velocity (m/s).
+	 *            Left unchanged unless the lookup succeeds.
+	 * @return Status: OK, or the reason no velocity was found. */
+	public int lookup(double angle, double range, double[] out) {
+		// Comparisons are written to also reject NaN
+		double fr = snap((range - firstRange) * rangeScale);
+		if (!(fr >= 0.0))
+			return RANGE_LOW;
+		if (!(fr <= ranges - 1))
+			return RANGE_HIGH;
+		double fa = snap((angle - firstAngle) * angleScale);
+		if (angles > 1) {
+			if (!(fa >= 0.0))
+				return ANGLE_LOW;
+			if (!(fa <= angles - 1))
+				return ANGLE_HIGH;
+		} else {
+			if (!(angle >= firstAngle - ANGLE_TOLERANCE))
+				return ANGLE_LOW;
+			if (!(angle <= firstAngle + ANGLE_TOLERANCE))
+				return ANGLE_HIGH;
+		}
+		// Lower corner, stepped back at the top edge of the table
+		int ir = Math.min((int) fr, Math.max(ranges - 2, 0));
+		int ia = Math.min((int) fa, Math.max(angles - 2, 0));
+		double tr = fr - ir;
+		double ta = fa - ia;
+		int i00 = ia * angleStride + ir * COLUMNS;
+		int i01 = (ranges > 1) ? i00 + COLUMNS : i00;
+		int i10 = (angles > 1) ? i00 + angleStride : i00;
+		int i11 = i10 + (i01 - i00);
+		double w00 = (1.0 - ta) * (1.0 - tr);
+		double w01 = (1.0 - ta) * tr;
+		double w10 = ta * (1.0 - tr);
+		double w11 = ta * tr;
+		// Only corners which contribute need a shot, so a query on an
+		// entry or edge next to one with no shot still succeeds
+		if ((w00 != 0.0 && velocity[i00] <= 0.0) ||
+		    (w01 != 0.0 && velocity[i01] <= 0.0) ||
+		    (w10 != 0.0 && velocity[i10] <= 0.0) ||
+		    (w11 != 0.0 && velocity[i11] <= 0.0))
+			return NO_SHOT;
+		for (int c = 0; c < COLUMNS; c++) {
+			out[c] = w00 * velocity[i00 + c] +
+			         w01 * velocity[i01 + c] +
+			         w10 * velocity[i10 + c] +
+			         w11 * velocity[i11 + c];
+		}
+		return OK;
+	}
+
+	/** Look up velocities for one shot.
+	 *
+	 * Usage: VelocityLookup [bin] [angle] [range] */
+	static public void main(String[] args) throws IOException {
+		VelocityLookup vl = load(args[0]);
+		double angle = Double.parseDouble(args[1]);
+		double range = Double.parseDouble(args[2]);
+		double[] v = new double[COLUMNS];
+		int status = vl.lookup(angle, range, v);
+		if (status == OK)
+			System.out.println(v[0] + "," + v[1] + "," + v[2]);
+		else {
+			System.err.println(describe(status) + " (angles " +
+				vl.getMinAngle() + " to " + vl.getMaxAngle() +
+				", ranges " + vl.getMinRange() + " to " +
+				vl.getMaxRange() + ")");
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,57 @@
+/** Velocity Verlet integrator.  Since drag and Magnus forces depend on
+ * velocity, the end-of-step acceleration is evaluated at a predicted
+ * velocity. */
+public class VelocityVerlet implements Integrator {
+
+	/** Step size (s) */
+	public final double step;
+
+	/** Create a new velocity Verlet integrator */
+	public VelocityVerlet(double s) {
+		step = s;
+	}
+
+	/** Advance a power cell by one step, no longer than max */
+	@Override
+	public double advance(PowerCell cell, double max) {
+		double h = Math.min(step, max);
+		double kd0 = cell.dragFactor(cell.velocity());
+		double ax0 = cell.accelerationX(cell.vx, cell.vy, kd0);
+		double ay0 = cell.accelerationY(cell.vx, cell.vy, kd0);
+		cell.x += (cell.vx + 0.5 * ax0 * h) * h;
+		cell.y += (cell.vy + 0.5 * ay0 * h) * h;
+		double vx = cell.vx + ax0 * h;
+		double vy = cell.vy + ay0 * h;
+		double kd1 = cell.dragFactor(Math.hypot(vx, vy));
+		double ax1 = cell.accelerationX(vx, vy, kd1);
+		double ay1 = cell.accelerationY(vx, vy, kd1);
+		cell.vx += 0.5 * (ax0 + ax1) * h;
+		cell.vy += 0.5 * (ay0 + ay1) * h;
+		return h;
+	}
+
+	/** Advance a power cell in three dimensions by one step, no longer
+	 * than max */
+	@Override
+	public double advance(PowerCell3D cell, double max) {
+		double h = Math.min(step, max);
+		double kd0 = cell.dragFactor(cell.vx, cell.vy, cell.vz);
+		double ax0 = cell.accelerationX(cell.vx, cell.vy, cell.vz, kd0);
+		double ay0 = cell.accelerationY(cell.vx, cell.vy, cell.vz, kd0);
+		double az0 = cell.accelerationZ(cell.vx, cell.vy, cell.vz, kd0);
+		cell.x += (cell.vx + 0.5 * ax0 * h) * h;
+		cell.y += (cell.vy + 0.5 * ay0 * h) * h;
+		cell.z += (cell.vz + 0.5 * az0 * h) * h;
+		double vx = cell.vx + ax0 * h;
+		double vy = cell.vy + ay0 * h;
+		double vz = cell.vz + az0 * h;
+		double kd1 = cell.dragFactor(vx, vy, vz);
+		double ax1 = cell.accelerationX(vx, vy, vz, kd1);
+		double ay1 = cell.accelerationY(vx, vy, vz, kd1);
+		double az1 = cell.accelerationZ(vx, vy, vz, kd1);
+		cell.vx += 0.5 * (ax0 + ax1) * h;
+		cell.vy += 0.5 * (ay0 + ay1) * h;
+		cell.vz += 0.5 * (az0 + az1) * h;
+		return h;
+	}
+}
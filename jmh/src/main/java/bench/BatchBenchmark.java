@@ -0,0 +1,123 @@
+package bench;
+
+import java.lang.invoke.MethodHandle;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks for noisy shots around one velocity, as in MonteCarlo,
+ * simulated one at a time or with BatchSimulator.  Both use fixed step
+ * RK4, the only scheme batches support.  Each operation is 100 shots. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BatchBenchmark {
+
+	/** Simulator(env, angle, range, settings) */
+	static private final MethodHandle NEW_SIM = Handles.constructor(
+		"Simulator", Handles.type("Environment"), double.class,
+		double.class, Handles.type("Settings"));
+
+	/** Simulator.simulateOutcome(v, da) */
+	static private final MethodHandle SIMULATE_OUTCOME = Handles.method(
+		"Simulator", "simulateOutcome", double.class, double.class);
+
+	/** BatchSimulator(env, angle, range, settings, lanes) */
+	static private final MethodHandle NEW_BATCH = Handles.constructor(
+		"BatchSimulator", Handles.type("Environment"), double.class,
+		double.class, Handles.type("Settings"), int.class);
+
+	/** BatchSimulator.simulateOutcomes(v, dv, da, outcomes) */
+	static private final MethodHandle SIMULATE_OUTCOMES = Handles.method(
+		"BatchSimulator", "simulateOutcomes", double.class,
+		double[].class, double[].class, int[].class);
+
+	/** Settings.parse(spec) */
+	static private final MethodHandle PARSE_SETTINGS = Handles.method(
+		"Settings", "parse", String.class);
+
+	/** Default environment */
+	static private final Object ENV = Handles.field("Environment",
+		"DEFAULT");
+
+	/** Launch angle (degrees) */
+	static private final double ANGLE = 45.0;
+
+	/** Launch velocity (m/s), near optimal for the ranges */
+	static private final double VELOCITY = 8.4;
+
+	/** Shots per operation */
+	static private final int SHOTS = 100;
+
+	/** Range (m) */
+	@Param({ "1.71", "2.71" })
+	public double range;
+
+	/** Lanes for the batch simulator */
+	@Param({ "8", "32", "100" })
+	public int lanes;
+
+	/** Scalar simulator */
+	private Object sim;
+
+	/** Batch simulator */
+	private Object batch;
+
+	/** Velocity noise of each shot (m/s) */
+	private final double[] dv = new double[SHOTS];
+
+	/** Angle noise of each shot (radians) */
+	private final double[] da = new double[SHOTS];
+
+	/** Outcome of each shot */
+	private final int[] outcomes = new int[SHOTS];
+
+	@Setup
+	public void setup() throws Throwable {
+		Object settings = (Object) PARSE_SETTINGS.invokeExact(
+			(Object) "rk4");
+		sim = (Object) NEW_SIM.invokeExact(ENV, ANGLE, range, settings);
+		batch = (Object) NEW_BATCH.invokeExact(ENV, ANGLE, range,
+			settings, lanes);
+		SplittableRandom rng = new SplittableRandom(1);
+		for (int i = 0; i < SHOTS; i++) {
+			dv[i] = 0.1 * (rng.nextDouble() - 0.5);
+			da[i] = 0.02 * (rng.nextDouble() - 0.5);
+		}
+	}
+
+	/** Simulate shots one at a time */
+	@Benchmark
+	public int scalar() throws Throwable {
+		int sum = 0;
+		for (int i = 0; i < SHOTS; i++) {
+			sum += (int) SIMULATE_OUTCOME.invokeExact(sim,
+				VELOCITY + dv[i], da[i]);
+		}
+		return sum;
+	}
+
+	/** Simulate shots in batches */
+	@Benchmark
+	public int batch() throws Throwable {
+		SIMULATE_OUTCOMES.invokeExact(batch, VELOCITY, (Object) dv,
+			(Object) da, (Object) outcomes);
+		int sum = 0;
+		for (int i = 0; i < SHOTS; i++)
+			sum += outcomes[i];
+		return sum;
+	}
+}
@@ -0,0 +1,47 @@
+package bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/** Run benchmarks, with allocation rates from the GC profiler.  Results
+ * are saved as JSON in jmh/results, named by date and time, so that runs
+ * can be compared.
+ *
+ * Usage: BenchmarkMain [regex] */
+public final class BenchmarkMain {
+
+	/** Directory for results */
+	static private final Path RESULTS = Paths.get("jmh", "results");
+
+	/** Format for result file names */
+	static private final DateTimeFormatter STAMP =
+		DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+	private BenchmarkMain() { }
+
+	static public void main(String[] args) throws IOException,
+		RunnerException
+	{
+		String include = (args.length > 0) ? args[0] : ".*";
+		Files.createDirectories(RESULTS);
+		Path file = RESULTS.resolve(LocalDateTime.now().format(STAMP) +
+			".json");
+		Options opt = new OptionsBuilder()
+			.include(include)
+			.addProfiler(GCProfiler.class)
+			.resultFormat(ResultFormatType.JSON)
+			.result(file.toString())
+			.build();
+		new Runner(opt).run();
+	}
+}
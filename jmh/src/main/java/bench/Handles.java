@@ -0,0 +1,89 @@
+package bench;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Executable;
+import java.lang.reflect.Method;
+
+/** Method handles for simulator classes.
+ *
+ * The simulator is in the default package, which JMH benchmarks cannot
+ * import, so it is reached through method handles.  Handles held in
+ * static final fields are constants to the JIT compiler, so calls through
+ * them are inlined like direct calls. */
+final class Handles {
+
+	/** Lookup for unreflecting methods */
+	static private final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+	private Handles() { }
+
+	/** Find a class in the default package */
+	static Class<?> type(String name) {
+		try {
+			return Class.forName(name);
+		}
+		catch (ClassNotFoundException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/** Get a handle for a method (of any visibility), with all reference
+	 * types erased to Object */
+	static MethodHandle method(String cls, String name, Class<?>... params) {
+		try {
+			Method m = type(cls).getDeclaredMethod(name, params);
+			return erase(LOOKUP.unreflect(access(m)));
+		}
+		catch (ReflectiveOperationException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/** Get a handle for a constructor (of any visibility), with all
+	 * reference types erased to Object */
+	static MethodHandle constructor(String cls, Class<?>... params) {
+		try {
+			Constructor<?> c = type(cls).getDeclaredConstructor(params);
+			return erase(LOOKUP.unreflectConstructor(access(c)));
+		}
+		catch (ReflectiveOperationException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/** Get the value of a static field */
+	static Object field(String cls, String name) {
+		try {
+			return type(cls).getField(name).get(null);
+		}
+		catch (ReflectiveOperationException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/** Make a method or constructor accessible */
+	static private <T extends Executable> T access(T e) {
+		e.setAccessible(true);
+		return e;
+	}
+
+	/** Erase reference types of a handle to Object */
+	static private MethodHandle erase(MethodHandle mh) {
+		return mh.asType(mh.type().erase());
+	}
+
+	/** Invoke a handle, wrapping checked exceptions */
+	static Object invoke(MethodHandle mh, Object... args) {
+		try {
+			return mh.invokeWithArguments(args);
+		}
+		catch (RuntimeException | Error e) {
+			throw e;
+		}
+		catch (Throwable t) {
+			throw new IllegalStateException(t);
+		}
+	}
+}
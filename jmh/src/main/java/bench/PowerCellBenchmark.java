@@ -0,0 +1,101 @@
+package bench;
+
+import java.lang.invoke.MethodHandle;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks for power cell motion and drag */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PowerCellBenchmark {
+
+	/** PowerCell(env, x, y, vx, vy) */
+	static private final MethodHandle NEW_CELL = Handles.constructor(
+		"PowerCell", Handles.type("Environment"), double.class,
+		double.class, double.class, double.class);
+
+	/** Default environment */
+	static private final Object ENV = Handles.field("Environment",
+		"DEFAULT");
+
+	/** PowerCell.advance(t) */
+	static private final MethodHandle ADVANCE = Handles.method(
+		"PowerCell", "advance", double.class);
+
+	/** PowerCell.dragCoefficient(rn) */
+	static private final MethodHandle DRAG = Handles.method("PowerCell",
+		"dragCoefficient", double.class);
+
+	/** Time step for advance (s) */
+	static private final double STEP = 1e-5;
+
+	/** Number of steps before launching a new power cell (one second
+	 * of flight) */
+	static private final int STEPS = 100_000;
+
+	/** Number of Reynolds numbers to cycle through (power of 2) */
+	static private final int REYNOLDS = 1024;
+
+	/** Lowest Reynolds number, for about 1 m/s */
+	static private final double MIN_REYNOLDS = 1e4;
+
+	/** Highest Reynolds number, for about 20 m/s */
+	static private final double MAX_REYNOLDS = 3e5;
+
+	/** Power cell in flight */
+	private Object cell;
+
+	/** Number of steps since launch */
+	private int steps;
+
+	/** Reynolds numbers, spread logarithmically */
+	private final double[] reynolds = new double[REYNOLDS];
+
+	/** Index of next Reynolds number */
+	private int index;
+
+	@Setup
+	public void setup() throws Throwable {
+		launch();
+		double r = Math.log(MAX_REYNOLDS / MIN_REYNOLDS);
+		for (int i = 0; i < REYNOLDS; i++) {
+			double f = (i * 0.618034) % 1.0;
+			reynolds[i] = MIN_REYNOLDS * Math.exp(f * r);
+		}
+	}
+
+	/** Launch a new power cell */
+	private void launch() throws Throwable {
+		cell = (Object) NEW_CELL.invokeExact(ENV, -3.0, 0.9, 6.0,
+			6.0);
+		steps = 0;
+	}
+
+	/** One explicit Euler step of 10 us */
+	@Benchmark
+	public void advance() throws Throwable {
+		if (++steps > STEPS)
+			launch();
+		ADVANCE.invokeExact(cell, STEP);
+	}
+
+	/** Drag coefficient lookup for a Reynolds number */
+	@Benchmark
+	public double dragCoefficient() throws Throwable {
+		index = (index + 1) & (REYNOLDS - 1);
+		return (double) DRAG.invokeExact(reynolds[index]);
+	}
+}
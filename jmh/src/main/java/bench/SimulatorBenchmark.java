@@ -0,0 +1,107 @@
+package bench;
+
+import java.lang.invoke.MethodHandle;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks for simulated shots and range searches.  Each operation
+ * uses a new Simulator, so that no shot comes from its cache, except for
+ * the allocation-free path, which has no cache. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SimulatorBenchmark {
+
+	/** Simulator(env, angle, range, settings) */
+	static private final MethodHandle NEW_SIM = Handles.constructor(
+		"Simulator", Handles.type("Environment"), double.class,
+		double.class, Handles.type("Settings"));
+
+	/** Simulator.simulate(v) */
+	static private final MethodHandle SIMULATE = Handles.method(
+		"Simulator", "simulate", double.class);
+
+	/** Simulator.simulateOutcome(v) */
+	static private final MethodHandle SIMULATE_OUTCOME = Handles.method(
+		"Simulator", "simulateOutcome", double.class);
+
+	/** Simulator.getValue() */
+	static private final MethodHandle GET_VALUE = Handles.method(
+		"Simulator", "getValue");
+
+	/** Simulator.Continuation() */
+	static private final MethodHandle NEW_CONT = Handles.constructor(
+		"Simulator$Continuation");
+
+	/** Simulator.findSpeedsForRange(cont) */
+	static private final MethodHandle FIND = Handles.method("Simulator",
+		"findSpeedsForRange", Handles.type("Simulator$Continuation"));
+
+	/** Default environment */
+	static private final Object ENV = Handles.field("Environment",
+		"DEFAULT");
+
+	/** Default simulator settings */
+	static private final Object SETTINGS = Handles.field("Settings",
+		"DEFAULT");
+
+	/** Launch angle (degrees) */
+	static private final double ANGLE = 45.0;
+
+	/** Range (m) */
+	@Param({ "1.71", "2.71" })
+	public double range;
+
+	/** Launch velocity (m/s), near optimal for the ranges */
+	@Param({ "8.4" })
+	public double velocity;
+
+	/** Simulator reused for the allocation-free path */
+	private Object reused;
+
+	@Setup
+	public void setup() throws Throwable {
+		reused = (Object) NEW_SIM.invokeExact(ENV, ANGLE, range,
+			SETTINGS);
+	}
+
+	/** Simulate one shot */
+	@Benchmark
+	public Object simulate() throws Throwable {
+		Object sim = (Object) NEW_SIM.invokeExact(ENV, ANGLE, range,
+			SETTINGS);
+		return (Object) SIMULATE.invokeExact(sim, velocity);
+	}
+
+	/** Simulate one shot with no allocation, for its outcome and
+	 * value */
+	@Benchmark
+	public double simulateOutcome() throws Throwable {
+		int outcome = (int) SIMULATE_OUTCOME.invokeExact(reused,
+			velocity);
+		return outcome + (double) GET_VALUE.invokeExact(reused);
+	}
+
+	/** Find optimal, high and low speeds for a range, without warm
+	 * start */
+	@Benchmark
+	public Object findSpeedsForRange() throws Throwable {
+		Object sim = (Object) NEW_SIM.invokeExact(ENV, ANGLE, range,
+			SETTINGS);
+		Object cont = (Object) NEW_CONT.invokeExact();
+		return (Object) FIND.invokeExact(sim, cont);
+	}
+}
@@ -0,0 +1,127 @@
+package bench;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks for range velocity table lookups.  Tables are loaded from
+ * range_velocity_45.csv, so benchmarks must run from the top of the
+ * tree. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TableBenchmark {
+
+	/** RangeVelocityTable.load(angle) */
+	static private final MethodHandle LOAD = Handles.method(
+		"RangeVelocityTable", "load", int.class);
+
+	/** RangeVelocityTable.loadBinary(file, angle) */
+	static private final MethodHandle LOAD_BINARY = Handles.method(
+		"RangeVelocityTable", "loadBinary", String.class, double.class);
+
+	/** RangeVelocityTable.getOptimal(range) */
+	static private final MethodHandle GET_OPTIMAL = Handles.method(
+		"RangeVelocityTable", "getOptimal", double.class);
+
+	/** TableFile.main(args) */
+	static private final MethodHandle CONVERT = Handles.method(
+		"TableFile", "main", String[].class);
+
+	/** VelocityLookup.load(file) */
+	static private final MethodHandle LOAD_LOOKUP = Handles.method(
+		"VelocityLookup", "load", String.class);
+
+	/** VelocityLookup.lookup(angle, range, out) */
+	static private final MethodHandle LOOKUP = Handles.method(
+		"VelocityLookup", "lookup", double.class, double.class,
+		double[].class);
+
+	/** Launch angle (degrees) */
+	static private final int ANGLE = 45;
+
+	/** Number of ranges to cycle through (power of 2) */
+	static private final int RANGES = 1024;
+
+	/** Table loaded from CSV */
+	private Object table;
+
+	/** Table mapped from binary file */
+	private Object binary;
+
+	/** Interpolated lookup */
+	private Object lookup;
+
+	/** Binary table file */
+	private Path file;
+
+	/** Ranges (m), in a scattered order */
+	private final double[] ranges = new double[RANGES];
+
+	/** Velocities from interpolated lookup */
+	private final double[] velocity = new double[3];
+
+	/** Index of next range */
+	private int index;
+
+	@Setup
+	public void setup() throws Throwable {
+		file = Files.createTempFile("range_velocity", ".bin");
+		String f = file.toString();
+		CONVERT.invokeExact((Object) new String[] {
+			"range_velocity_" + ANGLE + ".csv", f, "" + ANGLE
+		});
+		table = (Object) LOAD.invokeExact(ANGLE);
+		binary = (Object) LOAD_BINARY.invokeExact((Object) f,
+			(double) ANGLE);
+		lookup = (Object) LOAD_LOOKUP.invokeExact((Object) f);
+		for (int i = 0; i < RANGES; i++)
+			ranges[i] = 1.0 + ((i * 0.618034) % 1.0) * 8.0;
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(file);
+	}
+
+	/** Get next range (m) */
+	private double nextRange() {
+		index = (index + 1) & (RANGES - 1);
+		return ranges[index];
+	}
+
+	/** Nearest optimal velocity from a table loaded from CSV */
+	@Benchmark
+	public double getOptimal() throws Throwable {
+		return (double) GET_OPTIMAL.invokeExact(table, nextRange());
+	}
+
+	/** Nearest optimal velocity from a memory-mapped binary table */
+	@Benchmark
+	public double getOptimalBinary() throws Throwable {
+		return (double) GET_OPTIMAL.invokeExact(binary, nextRange());
+	}
+
+	/** Interpolated velocities, with lookup status */
+	@Benchmark
+	public int lookup() throws Throwable {
+		return (int) LOOKUP.invokeExact(lookup, (double) ANGLE,
+			nextRange(), (Object) velocity);
+	}
+}